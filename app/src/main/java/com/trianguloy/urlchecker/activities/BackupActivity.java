@@ -22,7 +22,9 @@ import android.widget.Toast;
 import com.trianguloy.urlchecker.BuildConfig;
 import com.trianguloy.urlchecker.R;
 import com.trianguloy.urlchecker.fragments.ResultCodeInjector;
+import com.trianguloy.urlchecker.modules.companions.ClearUrlCatalog;
 import com.trianguloy.urlchecker.modules.companions.Hosts;
+import com.trianguloy.urlchecker.modules.companions.ResolutionCache;
 import com.trianguloy.urlchecker.modules.companions.VersionManager;
 import com.trianguloy.urlchecker.modules.list.LogModule;
 import com.trianguloy.urlchecker.modules.list.VirusTotalModule;
@@ -439,7 +441,7 @@ public class BackupActivity extends Activity {
     private static final String ADVANCED_EXTRA = "advanced";
 
     private static final Function<String, Boolean> IS_PREF_SECRET = List.of(VirusTotalModule.PREF, LogModule.PREF, WebhookModule.URL_PREF)::contains;
-    private static final Function<String, Boolean> IS_FILE_CACHE = s -> s.startsWith(Hosts.PREFIX);
+    private static final Function<String, Boolean> IS_FILE_CACHE = s -> s.startsWith(Hosts.PREFIX) || s.startsWith(ClearUrlCatalog.COMPILED_FILE) || s.startsWith(ResolutionCache.FILE);
 
     private void chooseFile(String action, JavaUtils.Consumer<Uri> listener) {
         // choose backup file
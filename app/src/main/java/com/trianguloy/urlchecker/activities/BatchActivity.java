@@ -0,0 +1,261 @@
+package com.trianguloy.urlchecker.activities;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.Switch;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.trianguloy.urlchecker.R;
+import com.trianguloy.urlchecker.dialogs.MainDialog;
+import com.trianguloy.urlchecker.modules.companions.UrlCleaner;
+import com.trianguloy.urlchecker.utilities.AndroidSettings;
+import com.trianguloy.urlchecker.utilities.generics.GenericPref;
+import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
+import com.trianguloy.urlchecker.utilities.methods.LocaleUtils;
+import com.trianguloy.urlchecker.utilities.methods.PackageUtils;
+import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks all the links of a shared text (or text file) at once, with the non-interactive part of the modules (see {@link UrlCleaner}).
+ * Results are shown as soon as each one finishes, and the cleaned links can be copied or shared together.
+ */
+public class BatchActivity extends Activity {
+
+    /** Number of links checked at the same time */
+    private static final int THREADS = 4;
+
+    public static GenericPref.Bool STATUS_PREF(Context cntx) {
+        return new GenericPref.Bool("batch_status", false, cntx);
+    }
+
+    private GenericPref.Bool checkStatus;
+
+    private TextView progress;
+    private final ResultsAdapter adapter = new ResultsAdapter();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    /** Incremented on each new check, so results from previous ones are discarded */
+    private volatile int generation = 0;
+
+    private UrlCleaner cleaner;
+    private List<String> links = null;
+    private UrlCleaner.Result[] results;
+    private int finished;
+
+    // ------------------- listeners -------------------
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        AndroidSettings.setTheme(this, false);
+        LocaleUtils.setLocale(this);
+        setContentView(R.layout.activity_batch);
+        setTitle(R.string.batch_title);
+        AndroidUtils.configureUp(this);
+
+        progress = findViewById(R.id.progress);
+        ListView list = findViewById(R.id.list);
+        list.setAdapter(adapter);
+        // open a finished link, or copy it with a long click
+        list.setOnItemClickListener((parent, view, position, id) -> {
+            if (results[position] == null) return;
+            PackageUtils.startActivity(
+                    new Intent(this, MainDialog.class)
+                            .setAction(Intent.ACTION_SEND)
+                            .putExtra(Intent.EXTRA_TEXT, results[position].cleaned())
+                            .setType("text/plain"),
+                    R.string.toast_noApp,
+                    this
+            );
+        });
+        list.setOnItemLongClickListener((parent, view, position, id) -> {
+            if (results[position] == null) return false;
+            AndroidUtils.copyToClipboard(this, R.string.mOpen_clipboard, results[position].cleaned());
+            return true;
+        });
+
+        checkStatus = STATUS_PREF(this);
+        Switch statusSwitch = findViewById(R.id.status);
+        statusSwitch.setChecked(checkStatus.get());
+        statusSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            checkStatus.set(isChecked);
+            if (links != null) check();
+        });
+
+        // load the links and the rules in background
+        var intent = getIntent();
+        executor.execute(() -> {
+            var links = new ArrayList<>(AndroidUtils.getLinksFromText(getText(intent)));
+            cleaner = new UrlCleaner(this);
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                if (links.isEmpty()) {
+                    Toast.makeText(this, R.string.noLinks, Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+                this.links = links;
+                check();
+            });
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        executor.shutdownNow();
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            // press the 'back' button in the action bar to go back
+            onBackPressed();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // ------------------- actions -------------------
+
+    public void copyAll(View view) {
+        AndroidUtils.copyToClipboard(this, R.string.batch_copied, getCleanedLinks());
+    }
+
+    public void shareAll(View view) {
+        var share = new Intent(Intent.ACTION_SEND);
+        share.setType("text/plain");
+        share.putExtra(Intent.EXTRA_TEXT, getCleanedLinks());
+        PackageUtils.startActivity(Intent.createChooser(share, getString(R.string.share)), R.string.toast_noApp, this);
+    }
+
+    // ------------------- check -------------------
+
+    /** Checks all the links (again), replacing the list */
+    private void check() {
+        var generation = ++this.generation;
+        var checkStatus = this.checkStatus.get();
+        results = new UrlCleaner.Result[links.size()];
+        finished = 0;
+        updateProgress();
+        adapter.notifyDataSetChanged();
+
+        for (int i = 0; i < links.size(); i++) {
+            var index = i;
+            executor.execute(() -> {
+                if (generation != this.generation) return;
+                var result = cleaner.clean(links.get(index), checkStatus);
+                runOnUiThread(() -> {
+                    if (generation != this.generation) return;
+                    results[index] = result;
+                    finished++;
+                    updateProgress();
+                    adapter.notifyDataSetChanged();
+                });
+            });
+        }
+    }
+
+    /** Shows the number of finished links */
+    private void updateProgress() {
+        progress.setText(getString(R.string.batch_progress, finished, links.size()));
+    }
+
+    /** The rows of the links, with their results once finished */
+    private class ResultsAdapter extends BaseAdapter {
+
+        @Override
+        public int getCount() {
+            return links == null ? 0 : links.size();
+        }
+
+        @Override
+        public String getItem(int position) {
+            return links.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            var row = convertView != null ? convertView : getLayoutInflater().inflate(R.layout.batch_entry, parent, false);
+            if (results[position] != null) {
+                showResult(row, results[position]);
+            } else {
+                row.<TextView>findViewById(R.id.url).setText(links.get(position));
+                TextView info = row.findViewById(R.id.info);
+                info.setText(R.string.batch_pending);
+                AndroidUtils.clearRoundedColor(info);
+            }
+            return row;
+        }
+    }
+
+    /** Shows a finished [result] in its [row] */
+    private void showResult(View row, UrlCleaner.Result result) {
+        row.<TextView>findViewById(R.id.url).setText(result.cleaned());
+
+        // info
+        var lines = new ArrayList<String>();
+        if (result.blocked()) lines.add(getString(R.string.batch_blocked));
+        lines.add(result.isChanged()
+                ? getString(R.string.batch_applied, String.join(", ", result.applied()))
+                : getString(R.string.batch_unchanged));
+        if (result.queries() > 0) lines.add(getString(R.string.batch_queries, result.queries()));
+        if (result.label() != null) lines.add(result.label().first);
+        if (result.status() == UrlCleaner.CHECK_ERROR) lines.add(getString(R.string.batch_statusError));
+        else if (result.status() != UrlCleaner.NOT_CHECKED) lines.add(getString(R.string.batch_statusCode, result.status()));
+
+        TextView info = row.findViewById(R.id.info);
+        info.setText(String.join("\n", lines));
+        AndroidUtils.setRoundedColor(result.blocked() ? R.color.bad : result.isChanged() ? R.color.warning : R.color.good, info);
+    }
+
+    /** The cleaned links, one per line (the original ones if not finished yet) */
+    private String getCleanedLinks() {
+        if (links == null) return "";
+        var cleaned = new ArrayList<String>();
+        for (int i = 0; i < links.size(); i++) {
+            cleaned.add(results[i] != null ? results[i].cleaned() : links.get(i));
+        }
+        return String.join("\n", cleaned);
+    }
+
+    /* ------------------- intent ------------------- */
+
+    /** Returns the text sent with the [intent]: the text itself or the content of the sent file. Empty if none */
+    private String getText(Intent intent) {
+        if (intent == null) return "";
+
+        var text = intent.getStringExtra(Intent.EXTRA_TEXT);
+        if (text != null) return text;
+
+        Uri stream = intent.getParcelableExtra(Intent.EXTRA_STREAM);
+        if (stream == null) stream = intent.getData();
+        if (stream == null) return "";
+        try (var in = getContentResolver().openInputStream(stream)) {
+            return in == null ? "" : StreamUtils.inputStream2String(in);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            return "";
+        }
+    }
+}
@@ -11,6 +11,7 @@ import android.widget.Toast;
 
 import com.trianguloy.urlchecker.R;
 import com.trianguloy.urlchecker.fragments.ResultCodeInjector;
+import com.trianguloy.urlchecker.modules.companions.CatalogUpdater;
 import com.trianguloy.urlchecker.modules.companions.VersionManager;
 import com.trianguloy.urlchecker.utilities.AndroidSettings;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
@@ -34,6 +35,9 @@ public class MainActivity extends Activity {
         // mark as seen if required
         VersionManager.check(this);
 
+        // keep the catalogs updated
+        CatalogUpdater.schedule(this);
+
         // open tutorial if not done yet
         if (!TutorialActivity.DONE(this).get()) {
             PackageUtils.startActivity(new Intent(this, TutorialActivity.class), R.string.toast_noApp, this);
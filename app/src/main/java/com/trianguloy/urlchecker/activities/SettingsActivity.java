@@ -13,6 +13,7 @@ import com.trianguloy.urlchecker.R;
 //import com.trianguloy.urlchecker.fragments.BrowserButtonsFragment;
 import com.trianguloy.urlchecker.fragments.BrowserButtonsFragment;
 import com.trianguloy.urlchecker.fragments.ResultCodeInjector;
+import com.trianguloy.urlchecker.services.CleanerProvider;
 import com.trianguloy.urlchecker.utilities.AndroidSettings;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
 import com.trianguloy.urlchecker.utilities.methods.LocaleUtils;
@@ -39,6 +40,7 @@ public class SettingsActivity extends Activity {
         configureDayNight();
         configureLocale();
         Animations.ANIMATIONS(this).attachToSwitch(findViewById(R.id.animations));
+        CleanerProvider.ENABLED_PREF(this).attachToSwitch(findViewById(R.id.cleanerProvider));
 
         // if this was reloaded, some settings may have change, so reload previous one too
         if (AndroidSettings.wasReloaded(this)) AndroidSettings.markForReloading(this);
@@ -18,10 +18,12 @@ import android.widget.Toast;
 
 import com.trianguloy.urlchecker.BuildConfig;
 import com.trianguloy.urlchecker.R;
+import com.trianguloy.urlchecker.activities.BatchActivity;
 import com.trianguloy.urlchecker.modules.AModuleData;
 import com.trianguloy.urlchecker.modules.AModuleDialog;
 import com.trianguloy.urlchecker.modules.AutomationRules;
 import com.trianguloy.urlchecker.modules.ModuleManager;
+import com.trianguloy.urlchecker.modules.companions.CatalogUpdater;
 import com.trianguloy.urlchecker.modules.companions.VersionManager;
 import com.trianguloy.urlchecker.modules.list.DrawerModule;
 import com.trianguloy.urlchecker.url.UrlData;
@@ -29,14 +31,24 @@ import com.trianguloy.urlchecker.utilities.AndroidSettings;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
 import com.trianguloy.urlchecker.utilities.methods.Animations;
 import com.trianguloy.urlchecker.utilities.methods.Inflater;
+import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 import com.trianguloy.urlchecker.utilities.methods.LocaleUtils;
+import com.trianguloy.urlchecker.utilities.methods.PackageUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The main dialog, when opening a url
@@ -48,6 +60,11 @@ public class MainDialog extends Activity {
      */
     private static final int MAX_UPDATES = 100;
 
+    /**
+     * Runs the pure analyses of the modules concurrently
+     */
+    private static final ExecutorService analysisPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+
     // ------------------- helpers -------------------
 
     private AutomationRules automationRules;
@@ -55,9 +72,9 @@ public class MainDialog extends Activity {
     // ------------------- data -------------------
 
     /**
-     * All active modules
+     * All active modules, in the configured order
      */
-    private final Map<AModuleDialog, List<View>> modules = new HashMap<>();
+    private final Map<AModuleDialog, List<View>> modules = new LinkedHashMap<>();
 
     /**
      * Global data to keep even if the url changes
@@ -75,116 +92,308 @@ public class MainDialog extends Activity {
     private UrlData urlData = new UrlData("");
 
     /**
-     * Currently in the process of updating.
+     * Evaluates the urls, one at a time, outside the main thread
+     */
+    private final ExecutorService pipeline = Executors.newSingleThreadExecutor();
+
+    /**
+     * Generation of the newest url, older evaluations stop as soon as they notice it changed.
+     * Only modified from the main thread.
+     */
+    private volatile int generation = 0;
+
+    /**
+     * The analysis of a pure module: the [input] it used (see {@link AModuleDialog#getAnalysisInput}), if it could set a new url ([acceptUpdates]),
+     * the url it set ([newUrl], null if none) and its [result] (see {@link AModuleDialog#analyze})
+     */
+    private record Analysis(Object input, boolean acceptUpdates, UrlData newUrl, Object result) {
+    }
+
+    /**
+     * The last analysis of each pure module
+     */
+    private final Map<AModuleDialog, Analysis> lastAnalyses = new ConcurrentHashMap<>();
+
+    /**
+     * Currently notifying modules (from the main thread).
      */
-    private int updating = 0;
+    private boolean notifying = false;
 
     // ------------------- module functions -------------------
 
     /**
      * Something wants to set a new url.
+     * It is evaluated in the background, replacing any previous one still running. Only the newest one is displayed.
      */
     public void onNewUrl(UrlData newUrlData) {
-        // mark as next if nothing else yet
-        if (updating != 0) {
+        if (notifying) {
             AndroidUtils.assertError("Don't call onNewUrl while updating, use the onModifyUrl 'setNewUrl' callback");
             return;
         }
-        urlData = newUrlData;
 
-        // fire updates loop
-        main_loop:
-        while (true) {
-            updating++;
+        var currentGeneration = ++generation;
+        var currentModules = new ArrayList<>(modules.keySet());
+        try {
+            pipeline.execute(() -> evaluate(currentGeneration, currentModules, newUrlData));
+        } catch (RejectedExecutionException e) {
+            // destroyed
+            e.printStackTrace();
+        }
+    }
 
-            // first notify modules
-            for (var module : modules.keySet()) {
-                // skip own if required
-                if (!urlData.triggerOwn && module == urlData.trigger) continue;
-                try {
-                    module.onPrepareUrl(urlData);
-                } catch (Exception e) {
-                    AndroidUtils.assertError("Exception in onPrepareUrl for module " + module.getClass().getName(), e);
-                }
-            }
+    /**
+     * The updates loop of [newUrlData] for [modules], from the pipeline thread.
+     * Callbacks of the modules run on the main thread, except pure analyses. Stops if [currentGeneration] is no longer the newest one.
+     */
+    private void evaluate(int currentGeneration, List<AModuleDialog> modules, UrlData newUrlData) {
+        try {
+            var urlData = newUrlData;
+            var updates = 0;
+            // the results of the pure analyses of the final url
+            var results = new HashMap<AModuleDialog, Object>();
+
+            // fire updates loop
+            main_loop:
+            while (true) {
+                updates++;
+                var current = urlData;
+
+                // first notify modules
+                if (!runOnMainThread(currentGeneration, () -> {
+                    this.urlData = current;
+                    for (var module : modules) {
+                        // skip own if required
+                        if (!current.triggerOwn && module == current.trigger) continue;
+                        try {
+                            module.onPrepareUrl(current);
+                        } catch (Exception e) {
+                            AndroidUtils.assertError("Exception in onPrepareUrl for module " + module.getClass().getName(), e);
+                        }
+                    }
+                })) return;
+
+                // second ask for modifications
+                // pure analyses run in the background while the rest run on the main thread, then all are applied in order
+                var acceptUpdates = !current.disableUpdates && updates < MAX_UPDATES;
+                var reused = new HashMap<AModuleDialog, Analysis>();
+                var analyses = new HashMap<AModuleDialog, Future<Analysis>>();
+                for (var module : modules) {
+                    // skip own if required
+                    if (!current.triggerOwn && module == current.trigger) continue;
+                    if (!module.isPureAnalysis()) continue;
+
+                    // same input as its last analysis, reuse it
+                    var input = module.getAnalysisInput(current);
+                    var last = lastAnalyses.get(module);
+                    if (input != null && last != null && last.acceptUpdates == acceptUpdates && input.equals(last.input)) {
+                        reused.put(module, last);
+                        continue;
+                    }
 
-            // second ask for modifications
-            for (var module : modules.keySet()) {
-                // skip own if required
-                if (!urlData.triggerOwn && module == urlData.trigger) continue;
+                    lastAnalyses.remove(module);
+                    analyses.put(module, analysisPool.submit(() -> {
+                        var analysis = analyze(module, input, current, acceptUpdates);
+                        if (input != null) lastAnalyses.put(module, analysis);
+                        return analysis;
+                    }));
+                }
+                results.clear();
                 try {
-                    var modifiedUrlData = new UrlData[]{null};
-                    module.onModifyUrl(urlData, newUrl -> {
-                        // callback to replace the url. Alternative to throwing an exception and catch it here.
-                        // can't use a return value directly because the caller needs to know if it should continue or not.
-                        if (!urlData.disableUpdates && updating < MAX_UPDATES) {
-                            // new url accepted
-                            modifiedUrlData[0] = newUrl;
-                            return true;
+                    var index = 0;
+                    while (index < modules.size()) {
+                        if (generation != currentGeneration) return;
+
+                        var module = modules.get(index);
+                        var modifiedUrlData = new UrlData[]{null};
+                        if (reused.containsKey(module) || analyses.containsKey(module)) {
+                            // pure, wait for its analysis (if not reused)
+                            var result = reused.containsKey(module) ? reused.get(module) : getAnalysis(module, analyses.get(module));
+                            modifiedUrlData[0] = result == null ? null : result.newUrl;
+                            results.put(module, result == null ? null : result.result);
+                            index++;
                         } else {
-                            // a new url is not accepted
-                            return false;
+                            // the next modules until a pure one, all together on the main thread
+                            var end = index;
+                            while (end < modules.size() && !reused.containsKey(modules.get(end)) && !analyses.containsKey(modules.get(end))) end++;
+                            var others = modules.subList(index, end);
+                            if (!runOnMainThread(currentGeneration, () -> {
+                                for (var other : others) {
+                                    // skip own if required
+                                    if (!current.triggerOwn && other == current.trigger) continue;
+                                    modifiedUrlData[0] = modifyUrl(other, current, acceptUpdates);
+                                    if (modifiedUrlData[0] != null) break;
+                                }
+                            })) return;
+                            index = end;
+                        }
+
+                        if (modifiedUrlData[0] != null) {
+                            // modified, restart
+                            urlData = modifiedUrlData[0].merge(current);
+                            continue main_loop;
+                        }
+                    }
+                } finally {
+                    // never leave an analysis running, the next loop (or evaluation) may run the same module again
+                    for (var analysis : analyses.values()) {
+                        try {
+                            analysis.get();
+                        } catch (ExecutionException | InterruptedException ignored) {
+                            // not used
                         }
-                    });
-                    if (modifiedUrlData[0] != null) {
-                        // modified, restart
-                        modifiedUrlData[0].mergeData(urlData);
-                        urlData = modifiedUrlData[0];
-                        continue main_loop;
                     }
-                } catch (Exception e) {
-                    AndroidUtils.assertError("Exception in onModifyUrl for module " + module.getClass().getName(), e);
                 }
+
+                break;
             }
 
-            // third notify for final changes
-            for (var module : modules.keySet()) {
-                // skip own if required
-                if (!urlData.triggerOwn && module == urlData.trigger) continue;
+            // check the automations here, before publishing
+            var automationKeys = automationRules.automationsEnabledPref.get()
+                    ? automationRules.check(urlData)
+                    : Collections.<String>emptyList();
+
+            // publish the final url, if still the newest one
+            var finalUrlData = urlData;
+            runOnUiThread(() -> {
+                if (generation != currentGeneration) return;
+                notifying = true;
                 try {
-                    module.onDisplayUrl(urlData);
-                } catch (Exception e) {
-                    AndroidUtils.assertError("Exception in onDisplayUrl for module " + module.getClass().getName(), e);
+                    display(modules, finalUrlData, results, automationKeys);
+                } finally {
+                    notifying = false;
                 }
+            });
+        } catch (InterruptedException e) {
+            // stopped
+            e.printStackTrace();
+        } catch (Exception e) {
+            AndroidUtils.assertError("Exception while evaluating " + newUrlData, e);
+        }
+    }
+
+    /**
+     * The last phases of [urlData] for [modules]: display (with the [results] of the pure analyses), finish and run [automationKeys].
+     * From the main thread
+     */
+    private void display(List<AModuleDialog> modules, UrlData urlData, Map<AModuleDialog, Object> results, List<String> automationKeys) {
+        this.urlData = urlData;
+
+        // third notify for final changes
+        for (var module : modules) {
+            // skip own if required
+            if (!urlData.triggerOwn && module == urlData.trigger) continue;
+            try {
+                if (results.containsKey(module)) module.setAnalysis(results.get(module));
+                module.onDisplayUrl(urlData);
+            } catch (Exception e) {
+                AndroidUtils.assertError("Exception in onDisplayUrl for module " + module.getClass().getName(), e);
             }
+        }
 
-            // fourth finish notification
-            for (var module : modules.keySet()) {
-                // skip own if required
-                if (!urlData.triggerOwn && module == urlData.trigger) continue;
+        // fourth finish notification
+        for (var module : modules) {
+            // skip own if required
+            if (!urlData.triggerOwn && module == urlData.trigger) continue;
+            try {
+                module.onFinishUrl(urlData);
+            } catch (Exception e) {
+                AndroidUtils.assertError("Exception in onFinishUrl for module " + module.getClass().getName(), e);
+            }
+        }
+
+        // fifth run automations
+        for (var automationKey : automationKeys) {
+            var action = automations.get(automationKey);
+            if (action == null) {
+                if (automationRules.automationsShowErrorToast.get()) {
+                    Toast.makeText(this, getString(R.string.auto_notFound, automationKey), Toast.LENGTH_LONG).show();
+                }
+            } else {
                 try {
-                    module.onFinishUrl(urlData);
+                    action.run();
                 } catch (Exception e) {
-                    AndroidUtils.assertError("Exception in onFinishUrl for module " + module.getClass().getName(), e);
+                    AndroidUtils.assertError("Exception while running automation " + automationKey, e);
                 }
             }
+        }
+    }
 
-            // fifth run automations
-            if (automationRules.automationsEnabledPref.get()) {
-                for (var automationKey : automationRules.check(urlData)) {
-                    var action = automations.get(automationKey);
-                    if (action == null) {
-                        if (automationRules.automationsShowErrorToast.get()) {
-                            Toast.makeText(this, getString(R.string.auto_notFound, automationKey), Toast.LENGTH_LONG).show();
-                        }
-                    } else {
-                        try {
-                            action.run();
-                        } catch (Exception e) {
-                            AndroidUtils.assertError("Exception while running automation " + automationKey, e);
-                        }
-                    }
-                }
+    /**
+     * Runs [callbacks] on the main thread, and waits for them.
+     * Returns false (without running them) if [currentGeneration] is no longer the newest one
+     */
+    private boolean runOnMainThread(int currentGeneration, Runnable callbacks) throws InterruptedException {
+        var done = new CountDownLatch(1);
+        runOnUiThread(() -> {
+            try {
+                if (generation != currentGeneration) return;
+                notifying = true;
+                callbacks.run();
+            } finally {
+                notifying = false;
+                done.countDown();
             }
+        });
+        done.await();
+        return generation == currentGeneration;
+    }
+
+    /**
+     * Runs the onModifyUrl of [module] with [urlData] (from any thread).
+     * Returns the new url data it wants to set, null if none. New urls are only allowed if [acceptUpdates]
+     */
+    private static UrlData modifyUrl(AModuleDialog module, UrlData urlData, boolean acceptUpdates) {
+        var modifiedUrlData = new UrlData[]{null};
+        try {
+            module.onModifyUrl(urlData, setNewUrl(modifiedUrlData, acceptUpdates));
+        } catch (Exception e) {
+            AndroidUtils.assertError("Exception in onModifyUrl for module " + module.getClass().getName(), e);
+        }
+        return modifiedUrlData[0];
+    }
 
-            break;
+    /**
+     * Runs the analyze of the pure [module] with [urlData] and its [input] (from a background thread).
+     * New urls are only allowed if [acceptUpdates]
+     */
+    private static Analysis analyze(AModuleDialog module, Object input, UrlData urlData, boolean acceptUpdates) {
+        var modifiedUrlData = new UrlData[]{null};
+        Object result = null;
+        try {
+            result = module.analyze(urlData, setNewUrl(modifiedUrlData, acceptUpdates));
+        } catch (Exception e) {
+            AndroidUtils.assertError("Exception in analyze for module " + module.getClass().getName(), e);
         }
+        return new Analysis(input, acceptUpdates, modifiedUrlData[0], result);
+    }
 
-        // end, reset
-        updating = 0;
+    /** The setNewUrl callback, which saves the new url into [modifiedUrlData] if [acceptUpdates] */
+    private static JavaUtils.Function<UrlData, Boolean> setNewUrl(UrlData[] modifiedUrlData, boolean acceptUpdates) {
+        return newUrl -> {
+            // callback to replace the url. Alternative to throwing an exception and catch it here.
+            // can't use a return value directly because the caller needs to know if it should continue or not.
+            if (acceptUpdates) {
+                // new url accepted
+                modifiedUrlData[0] = newUrl;
+                return true;
+            } else {
+                // a new url is not accepted
+                return false;
+            }
+        };
+    }
+
+    /** Waits for the background [analysis] of [module], returns it (null if failed) */
+    private static Analysis getAnalysis(AModuleDialog module, Future<Analysis> analysis) throws InterruptedException {
+        try {
+            return analysis.get();
+        } catch (ExecutionException e) {
+            AndroidUtils.assertError("Exception in analyze for module " + module.getClass().getName(), e);
+            return null;
+        }
     }
 
-    /** Returns the current url data. Please don't modify it */
+    /** Returns the current url data */
     public UrlData getUrlData() {
         return urlData;
     }
@@ -220,6 +429,9 @@ public class MainDialog extends Activity {
         // mark as seen if required
         VersionManager.check(this);
 
+        // keep the catalogs updated (the dialog may be the only part of the app ever opened)
+        CatalogUpdater.ensureScheduled(this);
+
         // get views
         ll_main = findViewById(R.id.main);
         ll_drawer = findViewById(R.id.drawer);
@@ -258,11 +470,28 @@ public class MainDialog extends Activity {
                             onNewUrl(new UrlData(links_array[which]));
                             dialog.dismiss();
                         })
+                        .setNeutralButton(R.string.batch_open, (dialog, which) -> {
+                            // check all of them
+                            PackageUtils.startActivity(new Intent(this, BatchActivity.class)
+                                            .setAction(Intent.ACTION_SEND)
+                                            .putExtra(Intent.EXTRA_TEXT, String.join("\n", links))
+                                            .setType("text/plain"),
+                                    R.string.toast_noApp, this);
+                            finish();
+                        })
                         .setOnCancelListener(o -> finish())
                         .show();
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        // stop any evaluation
+        generation++;
+        pipeline.shutdown();
+        super.onDestroy();
+    }
+
     /**
      * Initializes the modules
      */
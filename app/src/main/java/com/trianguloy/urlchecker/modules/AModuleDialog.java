@@ -16,6 +16,9 @@ public abstract class AModuleDialog implements Fragment {
 
     private final MainDialog dialog;
 
+    /** The result of {@link #analyze} for the displayed url */
+    private Object analysis = null;
+
     // ------------------- initialization -------------------
 
     public AModuleDialog(MainDialog dialog) {
@@ -38,6 +41,32 @@ public abstract class AModuleDialog implements Fragment {
     public void onModifyUrl(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
     }
 
+    /**
+     * Return true if the url is checked with {@link #analyze} instead of {@link #onModifyUrl}.
+     * It will then run on a background thread, concurrently with the other modules (its result is still applied in order).
+     */
+    public boolean isPureAnalysis() {
+        return false;
+    }
+
+    /**
+     * For pure analyses (see {@link #isPureAnalysis}), the replacement of {@link #onModifyUrl}: same parameters, but from a background thread.
+     * It must only analyze the url: no views, no dialog methods, and no changes to this module or any state shared with other modules.
+     * Instead it returns the result (an immutable object), which will be available from {@link #getAnalysis} when this url is displayed.
+     */
+    public Object analyze(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
+        return null;
+    }
+
+    /**
+     * For pure analyses, everything of [urlData] that {@link #analyze} depends on (compared with equals).
+     * If it is the same as in the previous analysis, the analysis is not run again and its result is reused.
+     * Null (the default) to always run it.
+     */
+    public Object getAnalysisInput(UrlData urlData) {
+        return null;
+    }
+
     /**
      * Update UI and all needed for this final url. This will only be called for the final shown url.
      */
@@ -52,6 +81,21 @@ public abstract class AModuleDialog implements Fragment {
 
     // ------------------- utilities -------------------
 
+    /**
+     * Returns the result of {@link #analyze} for the displayed url, null if none. From the main thread
+     */
+    @SuppressWarnings("unchecked")
+    protected final <T> T getAnalysis() {
+        return (T) analysis;
+    }
+
+    /**
+     * Sets the result of {@link #analyze} for the url about to be displayed. From the main thread
+     */
+    public final void setAnalysis(Object analysis) {
+        this.analysis = analysis;
+    }
+
     /**
      * @return this activity context
      */
@@ -59,7 +103,7 @@ public abstract class AModuleDialog implements Fragment {
         return dialog;
     }
 
-    /** Returns the current urlData. Please don't modify it. */
+    /** Returns the current urlData. */
     protected final UrlData getUrlData() {
         return dialog.getUrlData();
     }
@@ -84,8 +128,7 @@ public abstract class AModuleDialog implements Fragment {
      * @param urlData new url and data
      */
     protected final void setUrl(UrlData urlData) {
-        urlData.trigger = this;
-        dialog.onNewUrl(urlData);
+        dialog.onNewUrl(new UrlData.Builder(urlData).trigger(this).build());
     }
 
     /**
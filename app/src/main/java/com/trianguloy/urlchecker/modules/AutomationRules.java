@@ -15,6 +15,9 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /** The automation rules, plus some automation related things (maybe consider splitting into other classes) */
 public class AutomationRules extends JsonCatalog {
@@ -69,30 +72,101 @@ public class AutomationRules extends JsonCatalog {
 
     /** Returns the automation ids that match a specific [urlData] */
     public List<String> check(UrlData urlData) {
-        var matches = new ArrayList<String>();
-
-        var catalog = getCatalog();
-        for (var key : JavaUtils.toList(catalog.keys())) {
-            try {
-                var automation = catalog.getJSONObject(key);
-                if (!automation.optBoolean("enabled", true)) continue;
-
-                for (String pattern : JavaUtils.getArrayOrElement(automation.get("regex"), String.class)){
-                    if (urlData.url.matches(pattern)) {
-                        matches.add(automation.getString("action"));
-                        break;
+        return getCompiled(Compiled::new).check(urlData.url);
+    }
+
+    /**
+     * The enabled automations, with all their regexes combined in a single pattern, so that a single match checks all of them.
+     * Each regex 'r' is converted into '(?:(?=(?:r)\z)())?' which always matches (empty), and sets its empty marker group only when 'r' matches the whole url.
+     * Regexes with backreferences (whose meaning would change when combined) are checked individually, as all of them if the combined one is invalid.
+     */
+    private static class Compiled {
+
+        /** A regex of an automation, with its marker group in the combined pattern (-1 if checked individually) */
+        private record Regex(Pattern pattern, int automation, int marker) {
+        }
+
+        /** the actions, by automation */
+        private final List<String> actions = new ArrayList<>();
+        private final List<Regex> regexes = new ArrayList<>();
+        /** the combined regex, null if none or invalid */
+        private final Pattern combined;
+
+        Compiled(JSONObject catalog) {
+            var combined = new StringBuilder("^");
+            var groups = 0;
+
+            for (var key : JavaUtils.toList(catalog.keys())) {
+                try {
+                    var automation = catalog.getJSONObject(key);
+                    if (!automation.optBoolean("enabled", true)) continue;
+
+                    // compile all first, to ignore the whole automation if any is invalid
+                    var action = automation.getString("action");
+                    var patterns = new ArrayList<Pattern>();
+                    for (String regex : JavaUtils.getArrayOrElement(automation.get("regex"), String.class)) {
+                        patterns.add(Pattern.compile(regex));
                     }
+
+                    actions.add(action);
+                    for (var pattern : patterns) {
+                        var marker = -1;
+                        if (!BACKREFERENCE.matcher(pattern.pattern()).find()) {
+                            // the marker goes after the groups of the regex
+                            groups += pattern.matcher("").groupCount() + 1;
+                            marker = groups;
+                            combined.append("(?:(?=(?:").append(pattern.pattern()).append(")\\z)())?");
+                        }
+                        regexes.add(new Regex(pattern, actions.size() - 1, marker));
+                    }
+
+                } catch (JSONException e) {
+                    AndroidUtils.assertError("Invalid automation rule", e);
+                } catch (ClassCastException | PatternSyntaxException e) {
+                    AndroidUtils.assertError("Invalid automation regex", e);
                 }
+            }
 
-            } catch (JSONException e) {
-                AndroidUtils.assertError("Invalid automation rule", e);
-            } catch (ClassCastException e) {
-                AndroidUtils.assertError("Invalid automation regex", e);
+            Pattern combinedPattern = null;
+            if (groups > 0) {
+                try {
+                    combinedPattern = Pattern.compile(combined.toString());
+                } catch (PatternSyntaxException e) {
+                    // can't be combined (duplicated named groups?), all will be checked individually
+                    e.printStackTrace();
+                }
             }
+            this.combined = combinedPattern;
+        }
+
+        /** Returns the actions of the automations that match [url] (if any of their regexes matches the whole url) */
+        List<String> check(String url) {
+            var matched = new boolean[actions.size()];
+
+            Matcher matcher = null;
+            if (combined != null) {
+                matcher = combined.matcher(url);
+                matcher.lookingAt(); // always matches
+            }
+
+            for (var regex : regexes) {
+                if (matched[regex.automation]) continue;
+                matched[regex.automation] = matcher != null && regex.marker != -1
+                        ? matcher.start(regex.marker) != -1
+                        : regex.pattern.matcher(url).matches();
+            }
+
+            var matches = new ArrayList<String>();
+            for (int i = 0; i < actions.size(); i++) {
+                if (matched[i]) matches.add(actions.get(i));
+            }
+            return matches;
         }
-        return matches;
     }
 
+    /** Backreferences to numbered or named groups */
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
     /** Generates the list of available automation keys, as text. */
     private static String getAvailableAutomations(Context cntx) {
         var stringBuilder = new StringBuilder(cntx.getString(R.string.auto_available_prefix)).append("\n");
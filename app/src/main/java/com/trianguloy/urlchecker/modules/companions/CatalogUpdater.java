@@ -0,0 +1,148 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.trianguloy.urlchecker.utilities.generics.GenericPref;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the catalogs that are updated periodically (ClearUrl and hosts) up to date, in background.
+ * The updates are done by the system when the device is idle enough: on an unmetered network and while charging.
+ * Unmodified catalogs are not downloaded again.
+ * On older devices (without JobScheduler) the outdated ones are updated when the app is opened instead.
+ */
+public class CatalogUpdater {
+
+    /** Time between updates */
+    public static final long PERIOD = TimeUnit.DAYS.toMillis(7);
+
+    /** Time before retrying a failed update (increased exponentially by the system) */
+    private static final long BACKOFF = TimeUnit.HOURS.toMillis(1);
+
+    private static final int JOB_ID = 1;
+
+    /** Held while a catalog is being updated, so that manual and background updates never run at the same time */
+    static final Object LOCK = new Object();
+
+    /** If the periodic job was scheduled (true) or cancelled (false), to avoid asking the system again */
+    private static GenericPref.Bool SCHEDULED_PREF(Context cntx) {
+        return new GenericPref.Bool("catalogUpdater_scheduled", false, cntx);
+    }
+
+    /** True once {@link #ensureScheduled} ran in this process */
+    private static volatile boolean ensured = false;
+
+    /** Schedules (or cancels) the periodic update, according to the current settings. Can be called any number of times */
+    public static void schedule(Context cntx) {
+        var context = cntx.getApplicationContext();
+        var enabled = new ClearUrlCatalog(context).isAutoUpdated() || Hosts.AUTOUPDATE_PREF(context).get();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            UpdateJob.schedule(context, enabled);
+        } else if (enabled) {
+            // no scheduler, update now if needed
+            new Thread(() -> update(context, true)).start();
+        }
+    }
+
+    /**
+     * Same as {@link #schedule}, but cheap enough for every opened url: only once per process, without system calls if the job is already in the expected state,
+     * and never updating directly (on older devices without JobScheduler, that's done by {@link #schedule} when the app is opened).
+     */
+    public static void ensureScheduled(Context cntx) {
+        if (ensured || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+        ensured = true;
+
+        var context = cntx.getApplicationContext();
+        var enabled = new ClearUrlCatalog(context).isAutoUpdated() || Hosts.AUTOUPDATE_PREF(context).get();
+        if (SCHEDULED_PREF(context).get() != enabled) UpdateJob.schedule(context, enabled);
+    }
+
+    /**
+     * Updates the enabled catalogs (only if outdated when [onlyOutdated]).
+     * Network operation, designed to be run in a background thread.
+     * Returns true if something failed and should be retried later.
+     */
+    static boolean update(Context cntx, boolean onlyOutdated) {
+        var retry = false;
+
+        var clearUrl = new ClearUrlCatalog(cntx);
+        if (clearUrl.isAutoUpdated() && (!onlyOutdated || clearUrl.isOutdated())) {
+            retry |= !clearUrl.autoUpdate();
+        }
+
+        // stopped, the rest later
+        if (Thread.currentThread().isInterrupted()) return true;
+
+        // never built databases are not built automatically
+        var hosts = new Hosts(cntx);
+        if (Hosts.AUTOUPDATE_PREF(cntx).get() && !hosts.isUninitialized() && (!onlyOutdated || hosts.isOutdated())) {
+            retry |= !hosts.autoUpdate();
+        }
+
+        Log.d("UPDATE", "Catalogs updated" + (retry ? ", with errors" : ""));
+        return retry;
+    }
+
+    /** The periodic job */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static class UpdateJob extends JobService {
+
+        /** The thread running the update, if any */
+        private Thread worker;
+
+        /** Schedules the job if [enabled] and not already scheduled, cancels it otherwise */
+        private static void schedule(Context cntx, boolean enabled) {
+            var scheduler = (JobScheduler) cntx.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            if (scheduler == null) return;
+
+            SCHEDULED_PREF(cntx).set(enabled);
+            if (!enabled) {
+                scheduler.cancel(JOB_ID);
+                return;
+            }
+
+            // keep the existing one, rescheduling would reset its period
+            for (var job : scheduler.getAllPendingJobs()) {
+                if (job.getId() == JOB_ID) return;
+            }
+
+            scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(cntx, UpdateJob.class))
+                    .setPeriodic(PERIOD)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setRequiresCharging(true)
+                    .setBackoffCriteria(BACKOFF, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                    .setPersisted(true) // survives reboots
+                    .build());
+        }
+
+        @Override
+        public boolean onStartJob(JobParameters params) {
+            // the job runs on the main thread
+            worker = new Thread(() -> {
+                var retry = update(this, false);
+                // if stopped the system already knows
+                if (!Thread.currentThread().isInterrupted()) jobFinished(params, retry);
+            });
+            worker.start();
+            return true;
+        }
+
+        @Override
+        public boolean onStopJob(JobParameters params) {
+            // conditions lost, stop and retry later
+            if (worker != null) worker.interrupt();
+            worker = null;
+            return true;
+        }
+    }
+}
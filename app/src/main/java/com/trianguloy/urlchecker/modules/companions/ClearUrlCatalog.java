@@ -2,14 +2,19 @@ package com.trianguloy.urlchecker.modules.companions;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
+import android.util.JsonReader;
 import android.util.Log;
 import android.util.Pair;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.trianguloy.urlchecker.BuildConfig;
 import com.trianguloy.urlchecker.R;
 import com.trianguloy.urlchecker.activities.JsonEditorInterface;
 import com.trianguloy.urlchecker.utilities.generics.GenericPref;
@@ -23,10 +28,16 @@ import com.trianguloy.urlchecker.utilities.wrappers.InternalFile;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Manages the local catalog with the rules
@@ -35,10 +46,16 @@ public class ClearUrlCatalog implements JsonEditorInterface {
 
     /* ------------------- constants ------------------- */
 
+    /** File name of the compiled catalog (see {@link ClearUrlRulesFile}) */
+    public static final String COMPILED_FILE = "clearUrlCatalog.compiled";
+
+    /** File name of a catalog being downloaded, replaces the custom one when valid */
+    private static final String DOWNLOAD_FILE = "clearUrlCatalog.download";
+
     private final InternalFile custom;
     private final AssetFile builtIn;
-    private static final int AUTOUPDATE_PERIOD = /* 1 week (in milliseconds) */
-            7/*days*/ * 24/*hours*/ * 60/*minutes*/ * 60/*seconds*/ * 1000/*milliseconds*/;
+    private final File compiled;
+    private final File download;
 
     /* ------------------- prefs ------------------- */
 
@@ -48,23 +65,37 @@ public class ClearUrlCatalog implements JsonEditorInterface {
     private final GenericPref.Lng lastUpdate;
     private final GenericPref.Lng lastCheck;
     private final GenericPref.Bool lastAuto;
+    /** The catalog url and the validators (etag, last modified) of its last applied download, for conditional requests */
+    private final GenericPref.LstStr validators;
+    /** The SHA-256 hash of the last applied download, to detect unchanged ones */
+    private final GenericPref.Str lastDigest;
+    /** The SHA-256 hash of the custom catalog file, saved when it is written (see {@link #getCustomDigest()}) */
+    private final GenericPref.Str customDigest;
 
     /* ------------------- constructor ------------------- */
 
-    private final Activity cntx;
+    private final Context cntx;
 
+    /** For the editor (see {@link JsonEditorInterface}) */
     public ClearUrlCatalog(Activity cntx) {
+        this((Context) cntx);
+    }
+
+    public ClearUrlCatalog(Context cntx) {
         this.cntx = cntx;
         custom = new InternalFile("clearUrlCatalog", cntx);
         builtIn = new AssetFile("data.minify.json", cntx);
+        compiled = cntx.getFileStreamPath(COMPILED_FILE);
+        download = cntx.getFileStreamPath(DOWNLOAD_FILE);
         catalogURL = new GenericPref.Str("clearurl_catalogURL", "https://rules2.clearurls.xyz/data.minify.json", cntx);
         hashURL = new GenericPref.Str("clearurl_hashURL", "https://rules2.clearurls.xyz/rules.minify.hash", cntx);
         autoUpdate = new GenericPref.Bool("clearurl_autoUpdate", false, cntx);
         lastUpdate = new GenericPref.Lng("clearurl_lastUpdate", /*data.minify.json-timestamp*/1739062648000L/*data.minify.json-timestamp*/, cntx);
         lastCheck = new GenericPref.Lng("clearurl_lastCheck", -1L, cntx);
         lastAuto = new GenericPref.Bool("clearurl_lastAuto", false, cntx);
-
-        updateIfNecessary();
+        validators = new GenericPref.LstStr("clearurl_validators", "\n", 3, Collections.emptyList(), cntx);
+        lastDigest = new GenericPref.Str("clearurl_lastDigest", "", cntx);
+        customDigest = new GenericPref.Str("clearurl_customDigest", "", cntx);
     }
 
     /* ------------------- catalog ------------------- */
@@ -94,31 +125,96 @@ public class ClearUrlCatalog implements JsonEditorInterface {
     }
 
     /**
-     * Parses and returns the providers from the catalog
-     * Returns a list of pairs: [(rule,data),...]
+     * The compiled rules, shared between all instances
+     */
+    private static ClearUrlRules compiledRules = null;
+
+    /**
+     * The catalog version of {@link #compiledRules}
+     */
+    private static String compiledVersion = null;
+
+    /**
+     * Returns the compiled providers from the catalog.
+     * They are compiled only once for each catalog version
+     */
+    public static ClearUrlRules getRules(Context cntx) {
+        ClearUrlCatalog clearUrlCatalog = new ClearUrlCatalog(cntx);
+        synchronized (ClearUrlCatalog.class) {
+            var version = clearUrlCatalog.getVersion();
+            if (compiledRules == null || !version.equals(compiledVersion)) {
+                compiledRules = clearUrlCatalog.loadRules();
+                compiledVersion = version;
+            }
+            return compiledRules;
+        }
+    }
+
+    /**
+     * Loads the rules from the compiled file, compiling it first if it is missing or outdated
      */
-    public static List<Pair<String, JSONObject>> getRules(Activity cntx) {
+    private ClearUrlRules loadRules() {
+        // already compiled
+        var version = getStamp();
+        var rules = ClearUrlRulesFile.read(compiled, version);
+        if (rules != null) return rules;
+
         try {
-            // prepare
-            List<Pair<String, JSONObject>> rules = new ArrayList<>();
-            ClearUrlCatalog clearUrlCatalog = new ClearUrlCatalog(cntx);
-            JSONObject json = clearUrlCatalog.getCatalog();
-
-            // extract and merge each provider
-            for (String provider : JavaUtils.toList(json.keys())) {
-                JSONObject providerData = json.getJSONObject(provider);
-                for (String rule : JavaUtils.toList(providerData.keys())) {
-                    rules.add(Pair.create(rule, providerData.getJSONObject(rule)));
-                }
+            var catalog = getCatalog();
+            try {
+                // compile and load
+                ClearUrlRulesFile.write(catalog, version, compiled);
+                rules = ClearUrlRulesFile.read(compiled, version);
+                if (rules != null) return rules;
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            return rules;
+
+            // can't use the file, compile in memory
+            return ClearUrlRules.compile(catalog);
         } catch (JSONException e) {
-            // invalid catalog, return empty
+            // invalid catalog, use empty
             AndroidUtils.assertError(e.getMessage(), e);
-            return Collections.emptyList();
+            return ClearUrlRules.EMPTY;
+        }
+    }
+
+    /**
+     * Compiles the current [catalog] into the compiled file, to be ready when needed
+     */
+    private void compileRules(JSONObject catalog) {
+        try {
+            ClearUrlRulesFile.write(catalog, getStamp(), compiled);
+        } catch (IOException | JSONException e) {
+            // will be compiled again when needed
+            e.printStackTrace();
+            compiled.delete();
         }
     }
 
+    /**
+     * Discards the compiled rules, they will be compiled again when needed
+     */
+    private static synchronized void invalidateRules() {
+        compiledRules = null;
+    }
+
+    /**
+     * Identifies the current catalog in memory, changes whenever the custom catalog is modified or removed (see {@link InternalFile#getVersion()})
+     */
+    private String getVersion() {
+        return custom.getVersion();
+    }
+
+    /**
+     * Identifies the current catalog content in the compiled file, across restarts:
+     * the hash of the custom catalog, or the app version for the built-in one (updated with the app)
+     */
+    private long getStamp() {
+        var digest = getCustomDigest();
+        return digest != null ? new BigInteger(digest.substring(0, 16), 16).longValue() : -BuildConfig.VERSION_CODE;
+    }
+
     /**
      * For {@link this#setRules(JSONObject, boolean)} return value
      */
@@ -150,20 +246,104 @@ public class ClearUrlCatalog implements JsonEditorInterface {
         }
         // compact
         String content = rules.toString();
+        var digest = StreamUtils.sha256(content);
 
         // nothing changed, nothing to update
-        if (content.equals(getCatalog().toString())) {
+        if (digest.equals(custom.exists() ? getCustomDigest() : getBuiltInDigests()[1])) {
             return Result.UP_TO_DATE;
         }
 
         // same as builtin (probably a reset), clear custom
-        if (content.equals(getBuiltIn().toString())) {
+        if (digest.equals(getBuiltInDigests()[1])) {
             clear();
             return Result.UPDATED;
         }
 
         // something new, save
-        return custom.set(content) ? Result.UPDATED : Result.ERROR;
+        customDigest.clear();
+        var saved = custom.set(content);
+        invalidateRules();
+        if (saved) {
+            customDigest.set(digest);
+            compileRules(rules);
+        }
+        return saved ? Result.UPDATED : Result.ERROR;
+    }
+
+    /**
+     * Replaces the local catalog with a downloaded [file] (moved, not copied) whose SHA-256 hash is [digest].
+     * Returns if it was up to date, updated or an error happened (the previous one is kept).
+     * Unchanged files, or the same as the built-in one, are detected by their hash. Otherwise the file is parsed once, to validate and compile it.
+     */
+    private Result replaceRules(File file, String digest) {
+        // nothing changed, nothing to update
+        if (digest.equals(custom.exists() ? getCustomDigest() : getBuiltInDigests()[0])) {
+            return Result.UP_TO_DATE;
+        }
+
+        // same as builtin, clear custom
+        if (digest.equals(getBuiltInDigests()[0])) {
+            clear();
+            return Result.UPDATED;
+        }
+
+        // something new, check and move
+        JSONObject rules;
+        try {
+            rules = new JSONObject(StreamUtils.inputStream2String(new FileInputStream(file)));
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return Result.ERROR;
+        }
+        customDigest.clear();
+        var saved = custom.replaceWith(file);
+        invalidateRules();
+        if (saved) {
+            customDigest.set(digest);
+            compileRules(rules);
+        }
+        return saved ? Result.UPDATED : Result.ERROR;
+    }
+
+    /**
+     * Merges a downloaded [file] into the local catalog (see {@link #setRules}).
+     * Returns if it was up to date, updated or an error happened (the previous one is kept)
+     */
+    private Result mergeRules(File file) {
+        try {
+            return setRules(new JSONObject(StreamUtils.inputStream2String(new FileInputStream(file))), true);
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return Result.ERROR;
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the custom catalog file, null if none.
+     * Saved when the file is written, computed (once) if it wasn't
+     */
+    private String getCustomDigest() {
+        if (!custom.exists()) return null;
+        var digest = customDigest.get();
+        if (digest.isEmpty()) {
+            digest = custom.sha256();
+            if (digest == null) return null;
+            customDigest.set(digest);
+        }
+        return digest;
+    }
+
+    /** The SHA-256 hashes of the built-in catalog: of its file and of its compact serialization (see {@link #setRules}) */
+    private static String[] builtInDigests = null;
+
+    /** Returns {@link #builtInDigests}, computed only once (the built-in catalog can't change) */
+    private String[] getBuiltInDigests() {
+        synchronized (ClearUrlCatalog.class) {
+            if (builtInDigests == null) {
+                builtInDigests = new String[]{builtIn.sha256(), StreamUtils.sha256(getBuiltIn().toString())};
+            }
+            return builtInDigests;
+        }
     }
 
     /**
@@ -171,9 +351,14 @@ public class ClearUrlCatalog implements JsonEditorInterface {
      */
     public void clear() {
         custom.delete();
+        compiled.delete();
+        invalidateRules();
         lastUpdate.clear();
         lastCheck.clear();
         lastAuto.clear();
+        validators.clear();
+        lastDigest.clear();
+        customDigest.clear();
     }
 
     // ------------------- dialogs -------------------
@@ -198,6 +383,10 @@ public class ClearUrlCatalog implements JsonEditorInterface {
     @Override
     public String saveJson(JSONObject data) {
         if (setRules(data, false) != Result.ERROR) {
+            // manually changed, the next update must be downloaded and applied again
+            validators.clear();
+            lastDigest.clear();
+
             // saved data, close dialog
             return null;
         } else {
@@ -216,12 +405,17 @@ public class ClearUrlCatalog implements JsonEditorInterface {
      */
     public void showUpdater() {
         // prepare dialog content
-        View views = cntx.getLayoutInflater().inflate(R.layout.config_clearurls_updater, null);
+        View views = LayoutInflater.from(cntx).inflate(R.layout.config_clearurls_updater, null);
 
         // configure
         catalogURL.attachToEditText(views.findViewById(R.id.catalog_URL));
         hashURL.attachToEditText(views.findViewById(R.id.hash_URL));
-        autoUpdate.attachToSwitch(views.findViewById(R.id.autoUpdate));
+        Switch autoUpdateSwitch = views.findViewById(R.id.autoUpdate);
+        autoUpdateSwitch.setChecked(autoUpdate.get());
+        autoUpdateSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            autoUpdate.set(isChecked);
+            CatalogUpdater.schedule(cntx);
+        });
 
         // info
         TextView txt_check = views.findViewById(R.id.last_check);
@@ -256,7 +450,7 @@ public class ClearUrlCatalog implements JsonEditorInterface {
                 int toast = _updateCatalog();
 
                 // update
-                cntx.runOnUiThread(() -> {
+                updateNow.post(() -> {
                     updateNow.setEnabled(true);
                     update.run();
                     Toast.makeText(cntx, toast, Toast.LENGTH_SHORT).show();
@@ -274,20 +468,27 @@ public class ClearUrlCatalog implements JsonEditorInterface {
 
     // ------------------- internal -------------------
 
+    /** True if the catalog must be updated periodically (see {@link CatalogUpdater}) */
+    public boolean isAutoUpdated() {
+        return autoUpdate.get();
+    }
+
+    /** True if the catalog wasn't checked recently */
+    public boolean isOutdated() {
+        return lastCheck.get() + CatalogUpdater.PERIOD < System.currentTimeMillis();
+    }
+
     /**
-     * If the catalog is old, updates it in background. Otherwise does nothing.
+     * Updates the catalog, from a background thread without ui (see {@link CatalogUpdater}).
+     * Returns false if it couldn't be downloaded, so that it is retried later.
      */
-    private void updateIfNecessary() {
-        if (autoUpdate.get() && lastUpdate.get() + AUTOUPDATE_PERIOD < System.currentTimeMillis()) {
-            new Thread(() -> {
-                // run
-                lastAuto.set(true);
-                int toast = _updateCatalog();
+    public boolean autoUpdate() {
+        lastAuto.set(true);
+        int result = _updateCatalog();
 
-                // don't show message to user, but log it
-                Log.d("UPDATE", cntx.getString(toast));
-            }).start();
-        }
+        // don't show message to user, but log it
+        Log.d("UPDATE", cntx.getString(result));
+        return result != R.string.mClear_urlError && result != R.string.mClear_hashError;
     }
 
     /**
@@ -296,56 +497,118 @@ public class ClearUrlCatalog implements JsonEditorInterface {
      * Returns the message to display to the user about the result
      */
     private int _updateCatalog() {
-        long now = System.currentTimeMillis();
-        lastCheck.set(now);
-
-        // read content
-        String rawRules;
-        try {
-            rawRules = HttpUtils.readFromUrl(catalogURL.get());
-        } catch (IOException e) {
-            e.printStackTrace();
-            return R.string.mClear_urlError;
-        }
+        // never at the same time as another update (manual or in background)
+        synchronized (CatalogUpdater.LOCK) {
+            long now = System.currentTimeMillis();
+            lastCheck.set(now);
+            var auto = lastAuto.get();
 
-        // check hash if provided
-        if (!hashURL.get().trim().isEmpty()) {
-
-            // read hash
-            String hash;
             try {
-                hash = HttpUtils.readFromUrl(hashURL.get()).trim();
-            } catch (IOException e) {
-                e.printStackTrace();
-                return R.string.mClear_hashError;
-            }
+                // download to a file, if modified since the last update, hashing it at the same time
+                var url = catalogURL.get();
+                var digest = new String[1];
+                Pair<String, String> newValidators;
+                try {
+                    newValidators = HttpUtils.readFromUrlIfModified(url, getValidators(url), stream -> digest[0] = StreamUtils.inputStream2FileSha256(stream, download));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return R.string.mClear_urlError;
+                }
+                if (newValidators == null) return R.string.mClear_upToDate;
+
+                // check hash if provided
+                if (!hashURL.get().trim().isEmpty()) {
+
+                    // read hash
+                    String hash;
+                    try {
+                        hash = HttpUtils.readFromUrl(hashURL.get()).trim();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return R.string.mClear_hashError;
+                    }
+
+                    // if different, notify
+                    if (!digest[0].equalsIgnoreCase(hash)) {
+                        return R.string.mClear_hashMismatch;
+                    }
+                }
 
-            // if different, notify
-            if (!StreamUtils.sha256(rawRules).equalsIgnoreCase(hash)) {
-                return R.string.mClear_hashMismatch;
+                // same as the last applied one, nothing to parse
+                if (digest[0].equals(lastDigest.get())) {
+                    setValidators(url, newValidators);
+                    return R.string.mClear_upToDate;
+                }
+
+                // valid, save and update
+                var result = replacesAll(download)
+                        // nothing to merge, use the file as is
+                        ? replaceRules(download, digest[0])
+                        : mergeRules(download);
+                switch (result) {
+                    case UPDATED:
+                        lastUpdate.set(now);
+                        // the catalog may have been cleared (same as the built-in one)
+                        lastCheck.set(now);
+                        lastAuto.set(auto);
+                        // fall through
+                    case UP_TO_DATE:
+                        setValidators(url, newValidators);
+                        lastDigest.set(digest[0]);
+                        return result == Result.UPDATED ? R.string.mClear_updated : R.string.mClear_upToDate;
+                    case ERROR:
+                    default:
+                        return R.string.invalid;
+                }
+            } finally {
+                // if not moved
+                download.delete();
             }
         }
+    }
 
-        // parse json
-        JSONObject json;
+    /**
+     * True if merging the downloaded [file] into the current catalog would replace all of it (see {@link #setRules}).
+     * Only their top-level keys are read, without loading them.
+     */
+    private boolean replacesAll(File file) {
         try {
-            json = new JSONObject(rawRules);
-        } catch (JSONException e) {
+            return getKeys(new FileInputStream(file)).containsAll(getKeys(custom.exists() ? custom.open() : builtIn.open()));
+        } catch (IOException | RuntimeException e) {
+            // invalid, will fail when merged
             e.printStackTrace();
-            return R.string.invalid;
+            return false;
         }
+    }
 
-        // valid, save and update
-        switch (setRules(json, true)) {
-            case UPDATED:
-                lastUpdate.set(now);
-                return R.string.mClear_updated;
-            case UP_TO_DATE:
-                return R.string.mClear_upToDate;
-            case ERROR:
-            default:
-                return R.string.invalid;
+    /** Returns the top-level keys of a json object from [stream] (closed afterwards), skipping their values */
+    private static Set<String> getKeys(InputStream stream) throws IOException {
+        var keys = new HashSet<String>();
+        try (var reader = new JsonReader(new InputStreamReader(stream, StreamUtils.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                keys.add(reader.nextName());
+                reader.skipValue();
+            }
         }
+        return keys;
+    }
+
+    /** Returns the saved validators of [url], null if none */
+    private Pair<String, String> getValidators(String url) {
+        var saved = validators.get();
+        if (saved.size() != 3 || !saved.get(0).equals(url)) return null;
+        return Pair.create(emptyToNull(saved.get(1)), emptyToNull(saved.get(2)));
+    }
+
+    /** Saves the [newValidators] of [url] */
+    private void setValidators(String url, Pair<String, String> newValidators) {
+        validators.set(Arrays.asList(url,
+                newValidators.first == null ? "" : newValidators.first,
+                newValidators.second == null ? "" : newValidators.second));
+    }
 
+    private static String emptyToNull(String string) {
+        return string.isEmpty() ? null : string;
     }
 }
@@ -0,0 +1,772 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
+import com.trianguloy.urlchecker.utilities.methods.UrlUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The ClearUrl catalog with all its regexes already compiled.
+ * Built once per catalog version (see {@link ClearUrlCatalog#getRules}) and shared, so checking an url only requires matching.
+ * Providers may be compiled lazily, when first needed (see {@link ClearUrlRulesFile}).
+ */
+public class ClearUrlRules {
+
+    /** A catalog without providers */
+    public static final ClearUrlRules EMPTY = new ClearUrlRules(Collections.emptyList(), Collections.emptyList());
+
+    /** All the providers, in catalog order */
+    public final List<Provider> providers;
+
+    /** Providers whose urlPattern can only match when the url host contains a specific label (label -> providers indexes) */
+    private final Map<String, BitSet> byLabel = new HashMap<>();
+    /** Providers that may match any url, they are always candidates */
+    private final BitSet global = new BitSet();
+
+    /**
+     * [providers] in catalog order, and for each one its [labels] (see {@link #getLabels(String)}).
+     * The providers list is only accessed when needed, so it can compile them lazily.
+     */
+    ClearUrlRules(List<Provider> providers, List<List<String>> labels) {
+        this.providers = providers;
+
+        // build index
+        for (int i = 0; i < labels.size(); i++) {
+            var providerLabels = labels.get(i);
+            if (providerLabels == null) {
+                global.set(i);
+            } else {
+                for (var label : providerLabels) {
+                    var indexes = byLabel.get(label);
+                    if (indexes == null) byLabel.put(label, indexes = new BitSet());
+                    indexes.set(i);
+                }
+            }
+        }
+    }
+
+    /** Compiles all the providers of a [catalog] ({"group":{"provider":{...}},...}) */
+    public static ClearUrlRules compile(JSONObject catalog) throws JSONException {
+        var providers = new ArrayList<Provider>();
+        var labels = new ArrayList<List<String>>();
+        for (var source : getSources(catalog)) {
+            providers.add(new Provider(source));
+            labels.add(source.getLabels());
+        }
+        return new ClearUrlRules(Collections.unmodifiableList(providers), labels);
+    }
+
+    /** Returns all the providers of a [catalog] ({"group":{"provider":{...}},...}), uncompiled */
+    static List<Source> getSources(JSONObject catalog) throws JSONException {
+        var sources = new ArrayList<Source>();
+        for (var group : JavaUtils.toList(catalog.keys())) {
+            var groupData = catalog.getJSONObject(group);
+            for (var name : JavaUtils.toList(groupData.keys())) {
+                sources.add(Source.fromJson(name, groupData.getJSONObject(name)));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Returns a new iterator over the providers that may match an url.
+     * Usage: for (int i = candidates.next(url, 0); i >= 0; i = candidates.next(url, i + 1))
+     */
+    public Candidates candidates() {
+        return new Candidates();
+    }
+
+    /**
+     * Iterates the candidate providers (by index, in catalog order) of an url that may change while iterating.
+     * Candidates are recomputed only when the host changes (for example after a redirection).
+     */
+    public class Candidates {
+        private String host = null;
+        private BitSet indexes = null;
+
+        /** Returns the index of the first candidate provider for [url] starting from [from], or -1 if there are no more */
+        public int next(String url, int from) {
+            var host = getHost(url);
+            if (indexes == null || !Objects.equals(host, this.host)) {
+                this.host = host;
+                indexes = (BitSet) global.clone();
+                if (host != null) {
+                    for (var label : host.split("\\.")) {
+                        var labelIndexes = byLabel.get(label);
+                        if (labelIndexes != null) indexes.or(labelIndexes);
+                    }
+                }
+            }
+            return indexes.nextSetBit(from);
+        }
+    }
+
+    /**
+     * Returns the (lowercase) host-like part of an url, as matched by the urlPatterns: the [a-z0-9.-] characters after 'http(s)://'.
+     * Null if the url doesn't start with http(s)://
+     */
+    private static String getHost(String url) {
+        int start;
+        if (url.regionMatches(true, 0, "http://", 0, 7)) start = 7;
+        else if (url.regionMatches(true, 0, "https://", 0, 8)) start = 8;
+        else return null;
+
+        var end = start;
+        while (end < url.length() && isHostChar(url.charAt(end))) end++;
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    /** [a-z0-9.-], case insensitive */
+    private static boolean isHostChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '.' || c == '-';
+    }
+
+    /* ------------------- clean ------------------- */
+
+    /** Notified of everything found while cleaning an url, all optional */
+    public interface CleanListener {
+        /** [provider] couldn't be compiled, so it was skipped */
+        default void onInvalid(Provider provider) {
+        }
+
+        /** [provider] matches the url */
+        default void onMatch(Provider provider) {
+        }
+
+        /** [provider] blocks the url */
+        default void onBlocked(Provider provider) {
+        }
+
+        /** The [exception] of [provider] matches, so it was ignored */
+        default void onException(Provider provider, Pattern exception) {
+        }
+
+        /** The [redirection] of [provider] was applied */
+        default void onRedirection(Provider provider, Pattern redirection) {
+        }
+
+        /** The [rawRule] of [provider] was applied */
+        default void onRawRule(Provider provider, Pattern rawRule) {
+        }
+
+        /** A parameter was removed by [rule] (a [referral] one or not) */
+        default void onRule(boolean referral, String rule) {
+        }
+    }
+
+    /**
+     * Applies all the matching providers to [url] (removing referrals unless [allowReferral]), notifying the [listener].
+     * Returns the cleaned url, the same one if nothing changed.
+     * Doesn't modify anything, so it can be called from any thread.
+     */
+    public String clean(String url, boolean allowReferral, CleanListener listener) {
+        var cleared = url;
+
+        // only the providers that may match the url (recomputed if the url host changes)
+        var candidates = candidates();
+        whileProvider:
+        for (int i = candidates.next(cleared, 0); i >= 0; i = candidates.next(cleared, i + 1)) {
+            // evaluate each provider
+            var provider = providers.get(i);
+            if (provider.urlPattern == null) {
+                // invalid provider, can't be checked
+                listener.onInvalid(provider);
+                continue;
+            }
+            if (!provider.urlPattern.matcher(cleared).find()) {
+                continue;
+            }
+
+            listener.onMatch(provider);
+
+            // invalid provider, can't be applied
+            if (!provider.valid) {
+                listener.onInvalid(provider);
+                continue;
+            }
+
+            // check blocked completeProvider
+            if (provider.completeProvider) {
+                listener.onBlocked(provider);
+                continue;
+            }
+
+            // check exceptions
+            for (var exception : provider.exceptions) {
+                if (exception.matcher(cleared).find()) {
+                    // exception matches, ignore provider
+                    listener.onException(provider, exception);
+                    continue whileProvider;
+                }
+            }
+
+            // apply redirections
+            for (var redirection : provider.redirections) {
+                Matcher matcher = redirection.matcher(cleared);
+                if (matcher.find() && matcher.groupCount() >= 1) {
+                    // redirection found
+                    listener.onRedirection(provider, redirection);
+                    cleared = decodeURIComponent(matcher.group(1)); // can't be null, checked in the if
+                    continue whileProvider;
+                }
+            }
+
+            // apply rawRules
+            for (var rawRule : provider.rawRules) {
+                Matcher matcher = rawRule.matcher(cleared);
+                if (matcher.find()) {
+                    // rawrule matches, apply
+                    cleared = matcher.replaceAll("");
+                    listener.onRawRule(provider, rawRule);
+                }
+            }
+
+            // apply rules and referral rules, and if changed fix cleaning artifacts (remove empty elements)
+            cleared = provider.removeParameters(cleared, !allowReferral, !cleared.equals(url), listener::onRule);
+
+            if (!cleared.equals(url)) {
+                // restore missing domain
+                if (!cleared.startsWith("http://") && !cleared.startsWith("https://")) {
+                    cleared = "http://" + cleared;
+                }
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Hopefully the same as javascript's decodeURIComponent
+     * Idea from https://stackoverflow.com/a/6926987, but using own implementation
+     */
+    private static String decodeURIComponent(String text) {
+        var result = new StringBuilder();
+        var parts = text.split("\\+");
+        for (var part : parts) {
+            if (result.length() != 0) result.append('+');
+            result.append(UrlUtils.decode(part));
+        }
+        return result.toString();
+    }
+
+    /* ------------------- index ------------------- */
+
+    private static final String PREFIX = "^https?://";
+    private static final String ESCAPED_PREFIX = "^https?:\\/\\/";
+
+    /**
+     * Returns the labels that an url host must contain for the [urlPattern] regex to match, or null if it can't be determined (the pattern may match any url).
+     * Only the usual catalog forms are recognized, which are anchored to the host:
+     * '^https?:\/\/(?:[a-z0-9-]+\.)*?label\.tld' (the subdomains group is optional, and can also be a literal like '(?:www\.)?')
+     * and '^https?:\/\/(?:[a-z0-9-]+\.)*?(label1\.tld|label2(?:\.[a-z]{2,}){1,})'
+     */
+    static List<String> getLabels(String urlPattern) {
+        int i;
+        if (urlPattern.startsWith(ESCAPED_PREFIX)) i = ESCAPED_PREFIX.length();
+        else if (urlPattern.startsWith(PREFIX)) i = PREFIX.length();
+        else return null;
+
+        // skip subdomains group
+        if (urlPattern.startsWith("(?:", i)) {
+            var end = urlPattern.indexOf(')', i);
+            if (end != -1 && isSubdomains(urlPattern.substring(i + 3, end))) {
+                i = end + 1;
+                while (i < urlPattern.length() && "*+?".indexOf(urlPattern.charAt(i)) != -1) i++;
+            }
+        }
+
+        // single label
+        if (!urlPattern.startsWith("(", i)) {
+            var label = getLabel(urlPattern, i);
+            return label == null ? null : List.of(label);
+        }
+
+        // alternatives, all of them must have a label
+        int start;
+        if (urlPattern.startsWith("(?:", i)) start = i + 3;
+        else if (urlPattern.startsWith("(?", i)) return null; // lookarounds, named groups...
+        else start = i + 1;
+        var end = getClosingParenthesis(urlPattern, i);
+        if (end == -1 || isOptional(urlPattern, end + 1)) return null;
+
+        var labels = new ArrayList<String>();
+        for (var alternative : getAlternatives(urlPattern.substring(start, end))) {
+            var label = getLabel(alternative, 0);
+            if (label == null) return null;
+            labels.add(label);
+        }
+        return labels;
+    }
+
+    /** Returns true if [group] (the content of a non-capturing group) matches one or more complete labels, including their final dot */
+    private static boolean isSubdomains(String group) {
+        if (group.equals("[a-z0-9-]+\\.")) return true;
+        if (!group.endsWith("\\.")) return false;
+        for (int i = 0; i < group.length(); i++) {
+            var c = group.charAt(i);
+            if (c == '\\' && i + 1 < group.length() && (group.charAt(i + 1) == '.' || group.charAt(i + 1) == '-')) i++;
+            else if (!isLabelChar(c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the literal label at position [i] of [regex] if it is followed by a literal dot (so it is a complete label), null otherwise.
+     * The label is returned in lowercase.
+     */
+    private static String getLabel(String regex, int i) {
+        var label = new StringBuilder();
+        while (i < regex.length()) {
+            var c = regex.charAt(i);
+            if (isLabelChar(c)) {
+                label.append(c);
+                i++;
+            } else if (regex.startsWith("\\-", i)) {
+                label.append('-');
+                i += 2;
+            } else break;
+        }
+        if (label.length() == 0) return null;
+
+        // must be followed by a dot
+        if (regex.startsWith("\\.", i)) return label.toString().toLowerCase(Locale.ROOT);
+        if (regex.startsWith("(?:\\.", i)) {
+            // a group starting with a dot, it must be mandatory and without alternatives
+            var end = getClosingParenthesis(regex, i);
+            if (end != -1 && !isOptional(regex, end + 1) && getAlternatives(regex.substring(i + 3, end)).size() == 1) {
+                return label.toString().toLowerCase(Locale.ROOT);
+            }
+        }
+        return null;
+    }
+
+    /** [a-z0-9-], case insensitive */
+    private static boolean isLabelChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-';
+    }
+
+    /** Returns true if there is a quantifier at position [i] of [regex] that allows zero repetitions */
+    private static boolean isOptional(String regex, int i) {
+        return regex.startsWith("?", i) || regex.startsWith("*", i) || regex.startsWith("{0", i);
+    }
+
+    /** Returns the index of the parenthesis that closes the one at position [open] of [regex], -1 if not found */
+    private static int getClosingParenthesis(String regex, int open) {
+        var depth = 0;
+        var inClass = false;
+        for (int i = open; i < regex.length(); i++) {
+            var c = regex.charAt(i);
+            if (c == '\\') i++;
+            else if (inClass) inClass = c != ']';
+            else if (c == '[') inClass = true;
+            else if (c == '(') depth++;
+            else if (c == ')' && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    /** Splits [regex] by its top-level '|' */
+    private static List<String> getAlternatives(String regex) {
+        var alternatives = new ArrayList<String>();
+        var depth = 0;
+        var inClass = false;
+        var start = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            var c = regex.charAt(i);
+            if (c == '\\') i++;
+            else if (inClass) inClass = c != ']';
+            else if (c == '[') inClass = true;
+            else if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (c == '|' && depth == 0) {
+                alternatives.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        alternatives.add(regex.substring(start));
+        return alternatives;
+    }
+
+    /* ------------------- provider ------------------- */
+
+    /**
+     * The uncompiled data of a provider, as in the catalog.
+     * [malformed] if some of the elements couldn't be read (urlPattern is null if that was the one).
+     */
+    record Source(String name, String urlPattern, boolean malformed, boolean completeProvider, boolean forceRedirection,
+                  List<String> exceptions, List<String> redirections, List<String> rawRules, List<String> rules, List<String> referralMarketing) {
+
+        /** Reads a provider from its catalog [data] */
+        static Source fromJson(String name, JSONObject data) {
+            String urlPattern = null;
+            try {
+                urlPattern = data.getString("urlPattern");
+                return new Source(name, urlPattern, false,
+                        data.optBoolean("completeProvider", false),
+                        data.optBoolean("forceRedirection", false),
+                        getStrings(data, "exceptions"),
+                        getStrings(data, "redirections"),
+                        getStrings(data, "rawRules"),
+                        getStrings(data, "rules"),
+                        getStrings(data, "referralMarketing"));
+            } catch (JSONException e) {
+                e.printStackTrace();
+                var empty = Collections.<String>emptyList();
+                return new Source(name, urlPattern, true, false, false, empty, empty, empty, empty, empty);
+            }
+        }
+
+        /** The labels of the urlPattern (see {@link #getLabels(String)}) */
+        List<String> getLabels() {
+            return urlPattern == null ? null : ClearUrlRules.getLabels(urlPattern);
+        }
+    }
+
+    /** A compiled provider */
+    public static class Provider {
+        public final String name;
+        /** The urlPattern regex, null if it couldn't be compiled */
+        public final Pattern urlPattern;
+        /** False if some of the other elements couldn't be read or compiled */
+        public final boolean valid;
+
+        public final boolean completeProvider;
+        public final boolean forceRedirection;
+        public final List<Pattern> exceptions = new ArrayList<>();
+        public final List<Pattern> redirections = new ArrayList<>();
+        public final List<Pattern> rawRules = new ArrayList<>();
+        public final Parameters rules;
+        public final Parameters referralMarketing;
+
+        Provider(Source source) {
+            this.name = source.name();
+            completeProvider = source.completeProvider();
+            forceRedirection = source.forceRedirection();
+
+            Pattern urlPattern = null;
+            var rules = Parameters.EMPTY;
+            var referralMarketing = Parameters.EMPTY;
+            var valid = false;
+            try {
+                if (source.urlPattern() != null) urlPattern = compile(source.urlPattern());
+
+                for (var exception : source.exceptions()) exceptions.add(compile(exception));
+                for (var redirection : source.redirections()) redirections.add(Pattern.compile(redirection)); // case sensitive
+                for (var rawRule : source.rawRules()) rawRules.add(compile(rawRule));
+                rules = new Parameters(source.rules());
+                referralMarketing = new Parameters(source.referralMarketing());
+                valid = !source.malformed();
+            } catch (PatternSyntaxException e) {
+                e.printStackTrace();
+            }
+            this.urlPattern = urlPattern;
+            this.rules = rules;
+            this.referralMarketing = referralMarketing;
+            this.valid = valid;
+        }
+
+        /**
+         * Removes from [url] the parameters (after a '?', '&' or '#') matched by the rules, and by the referral rules if [referrals].
+         * Same result as removing, rule by rule, all the '([?&#])rule=[^&#]*' matches.
+         * When all the rules can only match parameter names (see {@link Parameters#namesOnly}) the url is tokenized and rebuilt only once,
+         * otherwise the rules are applied one by one (see {@link #removeParametersSequentially}).
+         * [onRemoved] is called for each removed parameter, with true if it was a referral, and the rule that matched.
+         * <p>
+         * If something was removed, or if [cleanup], the empty elements ('?&', '&&', '&#', trailing '?'...) are also removed.
+         * Returns the (maybe unchanged) url.
+         */
+        public String removeParameters(String url, boolean referrals, boolean cleanup, JavaUtils.BiConsumer<Boolean, String> onRemoved) {
+            if (!rules.namesOnly || referrals && !referralMarketing.namesOnly) {
+                return removeParametersSequentially(url, referrals, cleanup, onRemoved);
+            }
+
+            var next = nextSeparator(url, 0, "?&#");
+            if (next == url.length()) return url; // nothing to remove or clean
+
+            var referralRules = referrals ? referralMarketing : Parameters.EMPTY;
+            var result = new StringBuilder(url.length()).append(url, 0, next);
+            var separators = new StringBuilder();
+            var removed = false;
+            var i = next;
+            while (i < url.length()) {
+                // separator
+                separators.append(url.charAt(i));
+                i++;
+
+                // parameter
+                next = nextSeparator(url, i, "?&#");
+                var equals = url.indexOf('=', i);
+                if (equals != -1 && equals < next) {
+                    var name = url.substring(i, equals);
+                    var isReferral = false;
+                    var rule = rules.find(name);
+                    if (rule == null) {
+                        rule = referralRules.find(name);
+                        isReferral = true;
+                    }
+                    if (rule != null) {
+                        // remove (its value may contain '?')
+                        onRemoved.accept(isReferral, rule);
+                        removed = true;
+                        i = nextSeparator(url, i, "&#");
+                        continue;
+                    }
+                }
+
+                // keep
+                if (next != i) {
+                    result.append(cleanSeparators(separators, false)).append(url, i, next);
+                    separators.setLength(0);
+                }
+                i = next;
+            }
+            result.append(cleanSeparators(separators, true));
+
+            return removed || cleanup ? result.toString() : url;
+        }
+
+        /**
+         * Same as {@link #removeParameters}, but applying each '([?&#])rule=[^&#]*' regex in order.
+         * For rules that may match a separator or an '=', where the parameters can't be checked independently.
+         */
+        private String removeParametersSequentially(String url, boolean referrals, boolean cleanup, JavaUtils.BiConsumer<Boolean, String> onRemoved) {
+            var cleared = rules.removeSequentially(url, false, onRemoved);
+            if (referrals) cleared = referralMarketing.removeSequentially(cleared, true, onRemoved);
+            if (!cleanup && cleared.equals(url)) return url;
+
+            // remove empty elements
+            return cleared
+                    .replaceAll("\\?&+", "?")
+                    .replaceAll("\\?#", "#")
+                    .replaceAll("\\?$", "")
+                    .replaceAll("&&+", "&")
+                    .replaceAll("&#", "#")
+                    .replaceAll("&$", "")
+                    .replaceAll("#&+", "#")
+                    .replaceAll("#$", "");
+        }
+    }
+
+    /**
+     * The rules of a provider that remove query parameters.
+     * Literal rules are checked with a hash lookup, and all the other ones with a single combined regex.
+     */
+    public static class Parameters {
+        static final Parameters EMPTY = new Parameters(Collections.emptyList());
+
+        /** literal rules, lowercase -> rule */
+        private final Map<String, String> literals = new HashMap<>();
+        /** regex rules */
+        private final List<Pattern> regexes = new ArrayList<>();
+        /** all the regex rules combined, null if there are none */
+        private final Pattern combined;
+        /** True if all the rules can only match parameter names (see {@link #matchesNamesOnly(String)}) */
+        final boolean namesOnly;
+        /** All the rules, in order */
+        private final List<String> all;
+        /** All the rules and their '([?&#])rule=[^&#]*' regexes, compiled when first needed (see {@link #removeSequentially}) */
+        private volatile List<SequentialRule> sequential = null;
+
+        Parameters(List<String> rules) {
+            all = rules;
+            var combined = new StringBuilder();
+            var namesOnly = true;
+            for (var rule : rules) {
+                if (LITERAL_RULE.matcher(rule).matches()) {
+                    literals.put(rule.toLowerCase(Locale.ROOT), rule);
+                } else {
+                    regexes.add(compile(rule));
+                    if (combined.length() != 0) combined.append('|');
+                    combined.append("(?:").append(rule).append(')');
+                    namesOnly &= matchesNamesOnly(rule);
+                }
+            }
+            this.combined = regexes.isEmpty() ? null : compile(combined.toString());
+            this.namesOnly = namesOnly;
+        }
+
+        /** Returns the rule that matches a parameter [name], null if none does */
+        String find(String name) {
+            if (!literals.isEmpty()) {
+                var rule = literals.get(toLowerCaseAscii(name));
+                if (rule != null) return rule;
+            }
+            if (combined == null || !combined.matcher(name).matches()) return null;
+
+            // find which one
+            for (var regex : regexes) {
+                if (regex.matcher(name).matches()) return regex.pattern();
+            }
+            return combined.pattern();
+        }
+
+        /** Removes all the matches of each rule from [url], in order (see {@link #sequential}) */
+        private String removeSequentially(String url, boolean referral, JavaUtils.BiConsumer<Boolean, String> onRemoved) {
+            var sequential = this.sequential;
+            if (sequential == null) {
+                // compile (if two threads do it at the same time, the result is the same)
+                sequential = new ArrayList<>(all.size());
+                for (var rule : all) sequential.add(new SequentialRule(rule, compile("([?&#])" + rule + "=[^&#]*")));
+                this.sequential = sequential;
+            }
+
+            for (var rule : sequential) {
+                var matcher = rule.regex.matcher(url);
+                while (matcher.find()) {
+                    url = matcher.replaceFirst("$1");
+                    matcher.reset(url);
+                    onRemoved.accept(referral, rule.rule);
+                }
+            }
+            return url;
+        }
+    }
+
+    /** A [rule] and its '([?&#])rule=[^&#]*' [regex] */
+    private record SequentialRule(String rule, Pattern regex) {
+    }
+
+    /** Characters that a rule must not be able to match to be checked on the parameter names alone */
+    private static final String DELIMITERS = "?&#=";
+
+    /**
+     * Returns true if [rule] can only match whole parameter names: a '([?&#])rule=' match is then the same as the full name matching the rule.
+     * Conservative: false for any construct that may match a delimiter ('.', negated classes, lookarounds, anchors, top-level alternatives...)
+     */
+    static boolean matchesNamesOnly(String rule) {
+        var inClass = 0;
+        var groups = 0;
+        for (int i = 0; i < rule.length(); i++) {
+            var c = rule.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    // only \d, \w, \s and escaped symbols
+                    if (++i == rule.length()) return false;
+                    var escaped = rule.charAt(i);
+                    if (Character.isLetterOrDigit(escaped) ? "dws".indexOf(escaped) == -1 : DELIMITERS.indexOf(escaped) != -1) return false;
+                }
+                case '[' -> {
+                    if (i + 1 < rule.length() && rule.charAt(i + 1) == '^') return false;
+                    inClass++;
+                }
+                case ']' -> {
+                    if (inClass > 0) inClass--;
+                }
+                case '-' -> {
+                    // a range that includes a delimiter
+                    if (inClass == 0 || i == 0 || i + 1 == rule.length()) continue;
+                    var from = rule.charAt(i - 1);
+                    var to = rule.charAt(i + 1);
+                    if (to == '\\') return false;
+                    for (var delimiter : DELIMITERS.toCharArray()) {
+                        if (from <= delimiter && delimiter <= to) return false;
+                    }
+                }
+                case '(' -> {
+                    // only non-capturing groups
+                    if (i + 1 < rule.length() && rule.charAt(i + 1) == '?' && (i + 2 == rule.length() || rule.charAt(i + 2) != ':')) return false;
+                    if (inClass == 0) groups++;
+                }
+                case ')' -> {
+                    if (inClass == 0) groups--;
+                }
+                case '|' -> {
+                    if (inClass == 0 && groups == 0) return false;
+                }
+                case '?' -> {
+                    // a quantifier outside classes
+                    if (inClass > 0) return false;
+                }
+                case '.', '^', '$', '&', '#', '=' -> {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Rules that only match themselves (case insensitive) */
+    private static final Pattern LITERAL_RULE = Pattern.compile("[a-zA-Z0-9_%:-]+");
+
+    /** Lowercase, but only ascii characters (as case insensitive regexes do). Null if there are other characters */
+    private static String toLowerCaseAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) return null;
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /** Returns the index of the first of [separators] in [url] starting from [from], or its length if none */
+    private static int nextSeparator(String url, int from, String separators) {
+        for (int i = from; i < url.length(); i++) {
+            if (separators.indexOf(url.charAt(i)) != -1) return i;
+        }
+        return url.length();
+    }
+
+    /**
+     * Removes the empty elements of a run of consecutive separators ('?', '&', '#'). Same as applying to the whole url, in order:
+     * '\?&+'->'?', '\?#'->'#', '\?$'->'', '&&+'->'&', '&#'->'#', '&$'->'', '#&+'->'#', '#$'->''
+     * ([atEnd] if the run is at the end of the url)
+     */
+    private static String cleanSeparators(CharSequence separators, boolean atEnd) {
+        var run = separators.toString();
+        if (run.length() == 1 && !atEnd) return run; // single separators are kept
+
+        run = removeAmpersandsAfter(run, '?');
+        run = run.replace("?#", "#");
+        if (atEnd) run = removeLast(run, '?');
+        run = removeAmpersandsAfter(run, '&');
+        run = run.replace("&#", "#");
+        if (atEnd) run = removeLast(run, '&');
+        run = removeAmpersandsAfter(run, '#');
+        if (atEnd) run = removeLast(run, '#');
+        return run;
+    }
+
+    /** Replaces [c] followed by any number of '&' with just [c] */
+    private static String removeAmpersandsAfter(String run, char c) {
+        var result = new StringBuilder(run.length());
+        for (int i = 0; i < run.length(); i++) {
+            var current = run.charAt(i);
+            if (current == '&' && result.length() > 0 && result.charAt(result.length() - 1) == c) continue;
+            result.append(current);
+        }
+        return result.toString();
+    }
+
+    /** Removes the last character of [run] if it is [c] */
+    private static String removeLast(String run, char c) {
+        return !run.isEmpty() && run.charAt(run.length() - 1) == c ? run.substring(0, run.length() - 1) : run;
+    }
+
+    /* ------------------- utils ------------------- */
+
+    /** Compiles a case insensitive regex */
+    private static Pattern compile(String regex) {
+        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+    }
+
+    /** Returns the strings of the [key] array of [data], empty if not present */
+    private static List<String> getStrings(JSONObject data, String key) throws JSONException {
+        var strings = new ArrayList<String>();
+        if (!data.has(key)) return strings;
+        var array = data.getJSONArray(key);
+        for (int i = 0; i < array.length(); i++) {
+            strings.add(array.getString(i));
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,241 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ClearUrl catalog compiled into a compact binary file, so that loading it requires no json parsing.
+ * The file is memory-mapped, and each provider is decoded and compiled only when first needed.
+ * <p>
+ * Format (big endian):
+ * <pre>
+ * header:    magic(int) format(int) stamp(long) providersCount(int) stringsCount(int)
+ * providers: providersCount * [name urlPattern flags labels exceptions redirections rawRules rules referralMarketing] (int each)
+ *            (urlPattern is a string index, -1 if null. labels and the rest are list positions, -1 if null)
+ * strings:   stringsCount * [position](int)
+ * lists:     [count(int) count*[string index](int)]...
+ * strings:   [length(int) utf8 bytes]...
+ * </pre>
+ * All strings are interned, each distinct one is stored only once.
+ */
+public class ClearUrlRulesFile {
+
+    private static final int MAGIC = 0x55434355; // "UCCU"
+    private static final int FORMAT = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int PROVIDER_FIELDS = 9;
+    private static final int PROVIDER_SIZE = PROVIDER_FIELDS * 4;
+
+    private static final int FLAG_COMPLETE_PROVIDER = 1;
+    private static final int FLAG_FORCE_REDIRECTION = 1 << 1;
+    private static final int FLAG_MALFORMED = 1 << 2;
+
+    /* ------------------- write ------------------- */
+
+    /**
+     * Compiles a [catalog] into [file], identified by [stamp].
+     * The file is replaced atomically.
+     */
+    public static void write(JSONObject catalog, long stamp, File file) throws IOException, JSONException {
+        var sources = ClearUrlRules.getSources(catalog);
+
+        // intern strings and build lists
+        var strings = new LinkedHashMap<String, Integer>();
+        var lists = new ByteArrayOutputStream();
+        var listsData = new DataOutputStream(lists);
+        var providers = new int[sources.size() * PROVIDER_FIELDS];
+        var listPositions = new ArrayList<Integer>(); // indexes in providers[] that hold a relative list position
+
+        for (int i = 0; i < sources.size(); i++) {
+            var source = sources.get(i);
+            var base = i * PROVIDER_FIELDS;
+            providers[base] = intern(strings, source.name());
+            providers[base + 1] = source.urlPattern() == null ? -1 : intern(strings, source.urlPattern());
+            providers[base + 2] = (source.completeProvider() ? FLAG_COMPLETE_PROVIDER : 0)
+                    | (source.forceRedirection() ? FLAG_FORCE_REDIRECTION : 0)
+                    | (source.malformed() ? FLAG_MALFORMED : 0);
+            List<List<String>> providerLists = List.of(
+                    source.exceptions(), source.redirections(), source.rawRules(), source.rules(), source.referralMarketing());
+            var labels = source.getLabels();
+            providers[base + 3] = labels == null ? -1 : writeList(listsData, strings, labels);
+            if (labels != null) listPositions.add(base + 3);
+            for (int l = 0; l < providerLists.size(); l++) {
+                providers[base + 4 + l] = writeList(listsData, strings, providerLists.get(l));
+                listPositions.add(base + 4 + l);
+            }
+        }
+        listsData.flush();
+
+        // encode strings
+        var stringsData = new ByteArrayOutputStream();
+        var stringsOut = new DataOutputStream(stringsData);
+        var stringPositions = new int[strings.size()];
+        var index = 0;
+        for (var string : strings.keySet()) {
+            var bytes = string.getBytes(StreamUtils.UTF_8);
+            stringPositions[index++] = stringsOut.size();
+            stringsOut.writeInt(bytes.length);
+            stringsOut.write(bytes);
+        }
+        stringsOut.flush();
+
+        // positions
+        var listsStart = HEADER_SIZE + providers.length * 4 + stringPositions.length * 4;
+        var stringsStart = listsStart + lists.size();
+        for (var position : listPositions) providers[position] += listsStart;
+
+        // write into a temporal file, then replace
+        var temp = new File(file.getPath() + ".tmp");
+        try (var out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(stamp);
+            out.writeInt(sources.size());
+            out.writeInt(stringPositions.length);
+            for (var value : providers) out.writeInt(value);
+            for (var position : stringPositions) out.writeInt(stringsStart + position);
+            lists.writeTo(out);
+            stringsData.writeTo(out);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    /** Returns the index of [string], adding it if new */
+    private static int intern(Map<String, Integer> strings, String string) {
+        var index = strings.get(string);
+        if (index == null) strings.put(string, index = strings.size());
+        return index;
+    }
+
+    /** Writes a list of strings, returns its relative position */
+    private static int writeList(DataOutputStream out, Map<String, Integer> strings, List<String> list) throws IOException {
+        var position = out.size();
+        out.writeInt(list.size());
+        for (var string : list) out.writeInt(intern(strings, string));
+        return position;
+    }
+
+    /* ------------------- read ------------------- */
+
+    /**
+     * Loads the rules from [file] if it is valid and was written with [stamp], null otherwise.
+     * The providers are read and compiled when first accessed.
+     */
+    public static ClearUrlRules read(File file, long stamp) {
+        if (!file.exists()) return null;
+        try (var raf = new RandomAccessFile(file, "r"); var channel = raf.getChannel()) {
+            // the mapping remains valid after closing
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT || buffer.getLong(8) != stamp) return null;
+
+            var reader = new Reader(buffer);
+            var labels = new ArrayList<List<String>>(reader.providersCount);
+            for (int i = 0; i < reader.providersCount; i++) {
+                labels.add(reader.getList(reader.getField(i, 3)));
+            }
+            return new ClearUrlRules(reader, labels);
+        } catch (IOException | IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            // missing, old or corrupted file
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * The providers of a mapped file, decoded and compiled when accessed
+     */
+    private static class Reader extends AbstractList<ClearUrlRules.Provider> {
+        private final ByteBuffer buffer;
+        private final int providersCount;
+        private final int stringsCount;
+        private final ClearUrlRules.Provider[] providers;
+        private final String[] strings;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            providersCount = buffer.getInt(16);
+            stringsCount = buffer.getInt(20);
+            providers = new ClearUrlRules.Provider[providersCount];
+            strings = new String[stringsCount];
+        }
+
+        @Override
+        public int size() {
+            return providersCount;
+        }
+
+        @Override
+        public synchronized ClearUrlRules.Provider get(int index) {
+            if (providers[index] == null) {
+                var flags = getField(index, 2);
+                var urlPattern = getField(index, 1);
+                providers[index] = new ClearUrlRules.Provider(new ClearUrlRules.Source(
+                        getString(getField(index, 0)),
+                        urlPattern == -1 ? null : getString(urlPattern),
+                        (flags & FLAG_MALFORMED) != 0,
+                        (flags & FLAG_COMPLETE_PROVIDER) != 0,
+                        (flags & FLAG_FORCE_REDIRECTION) != 0,
+                        getList(getField(index, 4)),
+                        getList(getField(index, 5)),
+                        getList(getField(index, 6)),
+                        getList(getField(index, 7)),
+                        getList(getField(index, 8))
+                ));
+            }
+            return providers[index];
+        }
+
+        /** Returns the [field] value of the provider [index] */
+        private int getField(int index, int field) {
+            if (index < 0 || index >= providersCount) throw new IndexOutOfBoundsException();
+            return buffer.getInt(HEADER_SIZE + index * PROVIDER_SIZE + field * 4);
+        }
+
+        /** Returns the list at [position], null if -1 */
+        private synchronized List<String> getList(int position) {
+            if (position == -1) return null;
+            var count = buffer.getInt(position);
+            var list = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(getString(buffer.getInt(position + 4 + i * 4)));
+            }
+            return list;
+        }
+
+        /** Returns the string [index] */
+        private synchronized String getString(int index) {
+            if (index < 0 || index >= stringsCount) throw new IndexOutOfBoundsException();
+            if (strings[index] == null) {
+                var position = buffer.getInt(HEADER_SIZE + providersCount * PROVIDER_SIZE + index * 4);
+                var bytes = new byte[buffer.getInt(position)];
+                var view = buffer.duplicate();
+                view.position(position + 4);
+                view.get(bytes);
+                strings[index] = new String(bytes, StreamUtils.UTF_8);
+            }
+            return strings[index];
+        }
+    }
+}
@@ -2,48 +2,75 @@ package com.trianguloy.urlchecker.modules.companions;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.util.Pair;
 
 import com.trianguloy.urlchecker.R;
+import com.trianguloy.urlchecker.utilities.generics.GenericPref;
 import com.trianguloy.urlchecker.utilities.generics.JsonCatalog;
 import com.trianguloy.urlchecker.utilities.methods.HttpUtils;
 import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
-import com.trianguloy.urlchecker.utilities.wrappers.InternalFile;
+import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
 import com.trianguloy.urlchecker.utilities.wrappers.ProgressDialog;
 
 import org.json.JSONException;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Represents and manages the hosts data */
 public class Hosts {
 
     private final HostsCatalog data;
 
-    private static final char SEPARATOR = '\t';
-    private static final int FILES = 128;
     public static final String PREFIX = "hosts_";
+    /** Number of sources downloaded at the same time */
+    private static final int DOWNLOAD_THREADS = 3;
+    /** Max time waiting for stopped downloads to finish (they stop at most after a read timeout) */
+    private static final long STOP_TIMEOUT = HttpUtils.CONNECT_TIMEOUT + HttpUtils.READ_TIMEOUT;
+    /** Hosts between progress updates of a source */
+    private static final int PROGRESS_STEP = 10000;
+    private static final String DATABASE = PREFIX + "db";
+    /** The hosts of each source, kept to update them incrementally */
+    private static final String SEGMENT_PREFIX = PREFIX + "source_";
+
+    /** The mapped database, shared between instances */
+    private static HostsFile database = null;
+    /** The modification time of the {@link #database} file */
+    private static long databaseVersion = 0;
+
+    public static GenericPref.Bool AUTOUPDATE_PREF(Context cntx) {
+        return new GenericPref.Bool("hosts_autoUpdate", false, cntx);
+    }
 
-    // A custom mapping from a given hash with queryable buckets
-    private final HashMap<Integer, HashMap<String, Pair<String, String>>> buckets = new HashMap<>();
-    private final Activity cntx;
+    private final File file;
+    private final Context cntx;
 
-    public Hosts(Activity cntx) {
+    public Hosts(Context cntx) {
         this.cntx = cntx;
         data = new HostsCatalog(cntx);
+        file = cntx.getFileStreamPath(DATABASE);
     }
 
-    /** Builds the hosts database (asks first) */
+    /** Builds the hosts database (asks first). Only from the ui: this must have been created with an activity */
     public void build(boolean showEditor, Runnable onFinished) {
         var builder = new AlertDialog.Builder(cntx)
                 .setTitle(R.string.mHosts_buildTitle)
                 .setMessage(R.string.mHosts_buildDesc)
                 .setNegativeButton(android.R.string.cancel, null)
                 .setPositiveButton(android.R.string.ok, (dialog, which) ->
-                        ProgressDialog.run(cntx, R.string.mHosts_buildProgress, progress -> {
+                        ProgressDialog.run((Activity) cntx, R.string.mHosts_buildProgress, progress -> {
                             progress.setMessage(cntx.getString(R.string.mHosts_buildInit));
                             _build(progress, onFinished);
                         })
@@ -60,113 +87,206 @@ public class Hosts {
         data.showEditor();
     }
 
-    /** Background thread that builds the database (and notifies progress) */
-    private void _build(ProgressDialog progress, Runnable onFinished) {
-        var catalog = data.getCatalog();
+    /** True if the database is built, but not recently */
+    public boolean isOutdated() {
+        return file.exists() && file.lastModified() + CatalogUpdater.PERIOD < System.currentTimeMillis();
+    }
 
-        // delete previous first
-        var fileNames = getFileNames();
-        progress.setMessage(cntx.getString(R.string.mHosts_buildClear));
-        progress.setMax(fileNames.size());
-        for (var fileName : fileNames) {
-            cntx.deleteFile(fileName);
-            progress.increaseProgress();
-        }
+    /**
+     * Builds the database again, from a background thread without ui (see {@link CatalogUpdater}).
+     * Sources that weren't modified are not downloaded again.
+     * Returns false if some of them couldn't be downloaded (their previous version is kept), so that it is retried later.
+     */
+    public boolean autoUpdate() {
+        return _build(null, null);
+    }
 
-        // iterate for each entry
-        Log.d("HOSTS", "Building mapping");
-        progress.setMax(catalog.length());
-        for (var label : JavaUtils.toList(catalog.keys())) {
-            try {
-                var entry = catalog.getJSONObject(label);
-                if (!entry.optBoolean("enabled", true)) continue;
-                var color = entry.optString("color", "-");
-                var replace = entry.optBoolean("replace", true);
-                if (entry.has("file")) {
-                    // download from remote file
-                    var file = entry.optString("file");
-
-                    progress.setMessage(cntx.getString(R.string.mHosts_buildDownload, label, file));
-
-                    Log.d("HOSTS", "Downloading " + file);
-                    HttpUtils.streamFromUrl(file, line -> {
-                        var parts = line.replaceAll("#.*", "").trim().split("\\s+");
-                        // everything except the first entry is a possible host
-                        for (int i = 1; i < parts.length; i++) {
-                            add(parts[i], Pair.create(label, color), replace);
+    /**
+     * Background thread that builds the database (and notifies [progress], if any).
+     * Returns false if some source couldn't be downloaded.
+     */
+    private boolean _build(ProgressDialog progress, Runnable onFinished) {
+        // never at the same time as another update (manual or in background)
+        synchronized (CatalogUpdater.LOCK) {
+            var catalog = data.getCatalog();
+
+            // iterate for each entry
+            Log.d("HOSTS", "Building mapping");
+            var usedFiles = new HashSet<String>();
+            var downloaded = new AtomicBoolean(true);
+            try (var hosts = new HostsBuilder(file)) {
+                var status = new LinkedHashMap<String, String>();
+                var executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
+                try {
+                    setMax(progress, catalog.length());
+                    for (var label : JavaUtils.toList(catalog.keys())) {
+                        try {
+                            var entry = catalog.getJSONObject(label);
+                            if (!entry.optBoolean("enabled", true)) continue;
+                            var labelColor = Pair.create(label, entry.optString("color", "-"));
+                            var replace = entry.optBoolean("replace", true);
+                            // sources are registered in catalog order, so the result doesn't depend on which download finishes first
+                            if (entry.has("file")) {
+                                // download from remote file, in parallel
+                                var source = hosts.addSource(labelColor, replace);
+                                var file = entry.optString("file");
+                                var segment = cntx.getFileStreamPath(SEGMENT_PREFIX + StreamUtils.sha256(label + "\n" + file).substring(0, 16));
+                                usedFiles.add(segment.getName());
+                                setStatus(progress, status, label, cntx.getString(R.string.mHosts_buildDownload, label, file));
+                                executor.execute(() -> {
+                                    try {
+                                        Log.d("HOSTS", "Downloading " + file);
+                                        var validators = HttpUtils.streamFromUrlIfModified(file, HostsBuilder.readValidators(segment), line -> {
+                                            source.addLine(line);
+                                            if (source.getCount() % PROGRESS_STEP == 0 && source.getCount() != 0) {
+                                                setStatus(progress, status, label, cntx.getString(R.string.mHosts_buildDownloadCount, label, source.getCount()));
+                                            }
+                                        });
+                                        if (validators != null) source.saveSegment(segment, validators);
+                                        else if (source.useSegment(segment)) Log.d("HOSTS", "Not modified " + file);
+                                    } catch (IOException e) {
+                                        e.printStackTrace();
+                                        downloaded.set(false);
+                                        // keep the previous version, if any
+                                        source.clear();
+                                        source.useSegment(segment);
+                                    }
+                                    setStatus(progress, status, label, null);
+                                });
+                            }
+                            if (entry.has("hosts")) {
+                                // add hosts directly
+                                var source = hosts.addSource(labelColor, replace);
+                                var hostsArray = entry.getJSONArray("hosts");
+                                for (int i = 0; i < hostsArray.length(); i++) {
+                                    source.add(hostsArray.getString(i));
+                                }
+                            }
+                            if (entry.has("file")) continue; // progress notified when downloaded
+                        } catch (JSONException e) {
+                            e.printStackTrace();
                         }
-                        // just the host, special syntax
-                        if (parts.length == 1) add(parts[0], Pair.create(label, color), replace);
-                    });
-                }
-                if (entry.has("hosts")) {
-                    // add hosts directly
-                    var hosts = entry.getJSONArray("hosts");
-                    for (int i = 0; i < hosts.length(); i++) {
-                        add(hosts.getString(i), Pair.create(label, color), replace);
+                        increaseProgress(progress);
+                    }
+
+                    // wait for the downloads
+                    executor.shutdown();
+                    try {
+                        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                        // stopped, cancel the downloads (they must not outlive the build) and keep it interrupted for the caller
+                        stop(executor);
+                        Thread.currentThread().interrupt();
+                        return false;
                     }
+                } finally {
+                    // never leave downloads running (if something failed)
+                    stop(executor);
                 }
-            } catch (JSONException | IOException e) {
+
+                // save as file
+                setMessage(progress, cntx.getString(R.string.mHosts_buildSave));
+                setMax(progress, 1);
+                hosts.build();
+                increaseProgress(progress);
+            } catch (IOException e) {
                 e.printStackTrace();
+                downloaded.set(false);
             }
-            progress.increaseProgress();
-        }
 
-
-        // save as files
-        progress.setMessage(cntx.getString(R.string.mHosts_buildSave));
-        progress.setMax(buckets.size());
-        for (var bucket : buckets.entrySet()) {
-            var builder = new StringBuilder();
-            for (var entry : bucket.getValue().entrySet()) {
-                // each line has <domain,label,color>
-                builder.append(entry.getKey().replace(SEPARATOR, ' '))
-                        .append(SEPARATOR)
-                        .append(entry.getValue().first.replace(SEPARATOR, ' '))
-                        .append(SEPARATOR)
-                        .append(entry.getValue().second.replace(SEPARATOR, ' '))
-                        .append("\n");
+            // delete unused files (segments of removed sources, temporal files, older formats...)
+            var fileNames = getFileNames();
+            setMessage(progress, cntx.getString(R.string.mHosts_buildClear));
+            setMax(progress, fileNames.size());
+            for (var fileName : fileNames) {
+                if (!fileName.equals(DATABASE) && !usedFiles.contains(fileName)) cntx.deleteFile(fileName);
+                increaseProgress(progress);
             }
 
+            // notify finish
+            Log.d("HOSTS", "Built: " + size() + " entries");
+            if (progress != null) progress.dismiss();
+            if (onFinished != null) new Handler(Looper.getMainLooper()).post(onFinished);
+            return downloaded.get();
+        }
+    }
+
+    /**
+     * Sets the status [message] of the source [label] (null when finished, which also increases the progress)
+     * and shows all of them
+     */
+    private static void setStatus(ProgressDialog progress, Map<String, String> status, String label, String message) {
+        synchronized (status) {
+            if (message != null) status.put(label, message);
+            else if (status.remove(label) != null) increaseProgress(progress);
+            setMessage(progress, String.join("\n", status.values()));
+        }
+    }
+
+    /** progress++, from any thread (if any progress) */
+    private static void increaseProgress(ProgressDialog progress) {
+        if (progress == null) return;
+        synchronized (progress) {
             progress.increaseProgress();
+        }
+    }
+
+    /** Sets the progress [message] (if any progress) */
+    private static void setMessage(ProgressDialog progress, String message) {
+        if (progress != null) progress.setMessage(message);
+    }
 
-            Log.d("HOSTS", "Creating entries " + bucket.getValue().size());
-            new InternalFile(PREFIX + bucket.getKey(), cntx)
-                    .set(builder.toString());
+    /** Cancels the downloads of [executor], if any, and waits (a bounded time) until they finish */
+    private static void stop(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) Log.d("HOSTS", "Downloads still running");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
+
+    /** Sets the progress [max] (if any progress) */
+    private static void setMax(ProgressDialog progress, int max) {
+        if (progress != null) progress.setMax(max);
+    }
 
-        // notify finish
-        Log.d("HOSTS", "Built: " + size() + " entries");
-        progress.dismiss();
-        cntx.runOnUiThread(() -> {
-            if (onFinished != null) onFinished.run();
-        });
+    /** The version of the database (changes when it is built or updated), 0 if not built */
+    public long getVersion() {
+        return file.lastModified();
     }
 
     /** return true if the database is built */
     public boolean isUninitialized() {
-        return buckets.isEmpty() && getFileNames().isEmpty();
+        return getDatabase(file) == null;
     }
 
-    /** Returns the label and color for the host, or bigger partial host (no subdomain). null if not in the database */
+    /**
+     * Returns the label and color for the host, or its deepest parent domain or wildcard ('*.domain') in the database.
+     * null if not in the database
+     */
     public Pair<String, String> contains(String host) {
-        var contains = containsExact(host);
-        if (contains != null) return contains;
-        if (!host.contains(".")) return null; // no more subdomains to check
-        return contains(host.split("\\.", 2)[1]); // remove leftmost subdomain
+        var database = getDatabase(file);
+        return database == null ? null : database.get(host, false);
+    }
+
+    /** Same as {@link #contains}, without an activity (can't build the database) */
+    public static Pair<String, String> lookup(String host, Context cntx) {
+        var database = getDatabase(cntx.getFileStreamPath(DATABASE));
+        return database == null ? null : database.get(host, false);
     }
 
     /** Returns the label and color for the exact host, null if not in the database */
     public Pair<String, String> containsExact(String host) {
-        return getBucket(host, key -> {
-            var values = new HashMap<String, Pair<String, String>>();
-            new InternalFile(PREFIX + key, cntx).stream(line -> {
-                // each line has <domain,label,color>
-                var elements = line.split(String.valueOf(SEPARATOR), 3);
-                if (elements.length == 3) values.put(elements[0], Pair.create(elements[1], elements[2]));
-            });
-            return values;
-        }).get(host);
+        var database = getDatabase(file);
+        return database == null ? null : database.get(host, true);
+    }
+
+    /** The number of hosts. */
+    public int size() {
+        var database = getDatabase(file);
+        return database == null ? 0 : database.size();
     }
 
     /* ------------------- internal ------------------- */
@@ -180,39 +300,16 @@ public class Hosts {
         return files;
     }
 
-    /** The number of hosts. */
-    public int size() {
-        // I miss streams :(
-        var s = 0;
-        for (var value : buckets.values()) {
-            s += value.size();
-        }
-        return s;
-    }
-
-    /**
-     * Add a new host to the memory catalog
-     * If replace is false existing entries won't be replaced
-     */
-    private void add(String host, Pair<String, String> data, boolean replace) {
-        var bucket = getBucket(host, k -> new HashMap<>());
-        if (replace || !bucket.containsKey(host)) bucket.put(host, data);
-    }
-
-    /** returns the bucket of a value, if not ready computes it */
-    private HashMap<String, Pair<String, String>> getBucket(String value, JavaUtils.Function<Integer, HashMap<String, Pair<String, String>>> compute) {
-        // HASHING
-        var hash = Math.floorMod(value.hashCode(), FILES);
-
-        // get
-        var bucket = buckets.get(hash);
-        if (bucket == null) {
-            // or set
-            bucket = compute.apply(hash);
-            buckets.put(hash, bucket);
+    /** Returns the mapped database [file] (mapped again if it changed), null if not built */
+    private static HostsFile getDatabase(File file) {
+        synchronized (Hosts.class) {
+            var version = file.lastModified();
+            if (version != databaseVersion) {
+                database = version == 0 ? null : HostsFile.open(file);
+                databaseVersion = version;
+            }
+            return database;
         }
-
-        return bucket;
     }
 
 }
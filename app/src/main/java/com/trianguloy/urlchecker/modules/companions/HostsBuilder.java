@@ -0,0 +1,328 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.util.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds the hosts database with bounded memory, using an external sort.
+ * Hosts are collected into fixed-size sorted runs written to disk, which are then merged into the {@link HostsFile}.
+ * <p>
+ * Each source collects its own runs, so different sources can be added from different threads.
+ * A source can also merge its runs into a segment: a persistent run with the http validators of its content,
+ * which can be reused by later builds if the content didn't change.
+ * When a host is added by multiple sources, the last one (in registration order) with 'replace' wins, or the first one if none has it.
+ * <p>
+ * Run (and segment) format: magic(int) format(int) etag(utf) lastModified(utf) [key(utf)]... ""(utf), keys sorted without duplicates.
+ */
+public class HostsBuilder implements Closeable {
+
+    private static final int MAGIC = 0x55434852; // "UCHR"
+    private static final int FORMAT = 1;
+
+    /** Max number of hosts kept in memory, per source, before writing a run */
+    private static final int RUN_SIZE = 50000;
+
+    /** A sorted run file of a source. Temporary runs are deleted when no longer needed, segments are kept */
+    private record Run(File file, Source source, boolean temporary) {
+    }
+
+    private final File file;
+    private final List<Source> sources = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+    private int runsCount = 0;
+    /** error while writing a run, thrown on build */
+    private IOException error = null;
+
+    /** Builds into [file] */
+    public HostsBuilder(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Registers a new source, with the [label] for its hosts.
+     * Sources must be registered in catalog order (from the same thread), they decide which label wins.
+     */
+    public Source addSource(Pair<String, String> label, boolean replace) {
+        var source = new Source(sources.size(), label, replace);
+        sources.add(source);
+        return source;
+    }
+
+    /** A source of hosts. Not thread-safe, but different sources can be used from different threads */
+    public class Source {
+        private final int id;
+        private final Pair<String, String> label;
+        private final boolean replace;
+        /** keys not yet written into a run */
+        private final List<String> keys = new ArrayList<>();
+        private int count = 0;
+
+        private Source(int id, Pair<String, String> label, boolean replace) {
+            this.id = id;
+            this.label = label;
+            this.replace = replace;
+        }
+
+        /**
+         * Adds a [host]. Invalid hosts are ignored.
+         * Doesn't throw (so it can be used from line consumers), errors are thrown by {@link #build()}
+         */
+        public void add(String host) {
+            host = HostsFile.normalize(host);
+            if (host == null) return;
+            keys.add(HostsFile.toKey(host));
+            count++;
+            if (keys.size() >= RUN_SIZE) writeRun(this);
+        }
+
+        /**
+         * Adds the hosts of a hosts file [line]: 'ip host1 host2... #comment', or just 'host'.
+         * Same as splitting by whitespace after removing the comment, but without regexes.
+         */
+        public void addLine(String line) {
+            var end = line.indexOf('#');
+            if (end == -1) end = line.length();
+
+            var tokens = 0;
+            String first = null;
+            var i = 0;
+            while (true) {
+                // skip whitespace
+                while (i < end && isWhitespace(line.charAt(i))) i++;
+                if (i >= end) break;
+
+                // token
+                var start = i;
+                while (i < end && !isWhitespace(line.charAt(i))) i++;
+                tokens++;
+                if (tokens == 1) first = line.substring(start, i); // the ip, unless it's the only one
+                else add(line.substring(start, i));
+            }
+
+            // just the host, special syntax
+            if (tokens == 1) add(first);
+        }
+
+        /** Number of hosts added */
+        public int getCount() {
+            return count;
+        }
+
+        /** Discards everything added (for example after a failed download) */
+        public void clear() {
+            keys.clear();
+            count = 0;
+            for (var run : removeRuns(this)) if (run.temporary) run.file.delete();
+        }
+
+        /** Uses the hosts of an existing [segment], returns false if it isn't valid */
+        public boolean useSegment(File segment) {
+            if (readValidators(segment) == null) return false;
+            addRun(new Run(segment, this, false));
+            return true;
+        }
+
+        /**
+         * Merges everything added into [segment] (replaced atomically) with the [validators] of its content (etag, last modified).
+         * The source then uses it.
+         */
+        public void saveSegment(File segment, Pair<String, String> validators) throws IOException {
+            writeRun(this);
+            if (error != null) throw error;
+            var runs = removeRuns(this);
+
+            var temp = new File(segment.getPath() + ".tmp");
+            try (var out = openRun(temp, validators)) {
+                merge(runs, (key, winner) -> out.writeUTF(key));
+                out.writeUTF("");
+            } finally {
+                for (var run : runs) if (run.temporary) run.file.delete();
+            }
+            if (!temp.renameTo(segment)) {
+                temp.delete();
+                throw new IOException("Can't replace " + segment);
+            }
+            addRun(new Run(segment, this, false));
+        }
+    }
+
+    /** Returns the validators (etag, last modified) of a [segment], null if it doesn't exist or is invalid */
+    public static Pair<String, String> readValidators(File segment) {
+        if (!segment.exists()) return null;
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            return readHeader(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** Merges all the runs into the database file, replacing it */
+    public void build() throws IOException {
+        for (var source : sources) writeRun(source);
+        if (error != null) throw error;
+
+        try (var writer = new HostsFile.Writer(file)) {
+            merge(runs, (key, winner) -> writer.add(key, winner.label));
+            writer.commit();
+        }
+    }
+
+    /** Deletes the temporary runs */
+    @Override
+    public synchronized void close() {
+        for (var run : runs) if (run.temporary) run.file.delete();
+        runs.clear();
+    }
+
+    /* ------------------- internal ------------------- */
+
+    /** Returns which of [current] (null if none) and the later [next] source wins */
+    private static Source getWinner(Source current, Source next) {
+        return current == null || next.replace ? next : current;
+    }
+
+    /** Receives the merged keys */
+    private interface KeyConsumer {
+        void accept(String key, Source winner) throws IOException;
+    }
+
+    /** K-way merge of [runs], grouping by key (and then by source) */
+    private static void merge(List<Run> runs, KeyConsumer consumer) throws IOException {
+        var readers = new PriorityQueue<RunReader>(Math.max(1, runs.size()), (a, b) -> {
+            var comparison = a.key.compareTo(b.key);
+            return comparison != 0 ? comparison : Integer.compare(a.run.source.id, b.run.source.id);
+        });
+        try {
+            for (var run : runs) {
+                var reader = new RunReader(run);
+                if (reader.next()) readers.add(reader);
+                else reader.close();
+            }
+
+            while (!readers.isEmpty()) {
+                var key = readers.peek().key;
+                Source winner = null;
+                while (!readers.isEmpty() && readers.peek().key.equals(key)) {
+                    var reader = readers.poll();
+                    winner = getWinner(winner, reader.run.source);
+                    if (reader.next()) readers.add(reader);
+                    else reader.close();
+                }
+                consumer.accept(key, winner);
+            }
+        } finally {
+            for (var reader : readers) reader.close();
+        }
+    }
+
+    /** Sorts the pending keys of [source] and writes them as a new temporary run */
+    private void writeRun(Source source) {
+        var keys = source.keys;
+        if (keys.isEmpty()) return;
+        Collections.sort(keys);
+
+        File run;
+        synchronized (this) {
+            run = new File(file.getPath() + ".run" + runsCount++);
+        }
+
+        try (var out = openRun(run, null)) {
+            String last = null;
+            for (var key : keys) {
+                if (!key.equals(last)) out.writeUTF(key);
+                last = key;
+            }
+            out.writeUTF("");
+        } catch (IOException e) {
+            synchronized (this) {
+                if (error == null) error = e;
+            }
+        } finally {
+            addRun(new Run(run, source, true));
+            keys.clear();
+        }
+    }
+
+    /** Creates a run file, with its header */
+    private static DataOutputStream openRun(File file, Pair<String, String> validators) throws IOException {
+        var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeUTF(validators == null || validators.first == null ? "" : validators.first);
+        out.writeUTF(validators == null || validators.second == null ? "" : validators.second);
+        return out;
+    }
+
+    /** Reads the header of a run, returns its validators */
+    private static Pair<String, String> readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) throw new IOException("Invalid run");
+        var etag = in.readUTF();
+        var lastModified = in.readUTF();
+        return Pair.create(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified);
+    }
+
+    private synchronized void addRun(Run run) {
+        runs.add(run);
+    }
+
+    /** Removes and returns the runs of [source] */
+    private synchronized List<Run> removeRuns(Source source) {
+        var removed = new ArrayList<Run>();
+        for (var iterator = runs.iterator(); iterator.hasNext(); ) {
+            var run = iterator.next();
+            if (run.source == source) {
+                removed.add(run);
+                iterator.remove();
+            }
+        }
+        return removed;
+    }
+
+    /** Reads the keys of a run */
+    private static class RunReader implements Closeable {
+        private final Run run;
+        private final DataInputStream in;
+        String key;
+
+        RunReader(Run run) throws IOException {
+            this.run = run;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file)));
+            try {
+                readHeader(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /** Reads the next key, returns false if there are no more */
+        boolean next() throws IOException {
+            key = in.readUTF();
+            return !key.isEmpty();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Same as the regex '\s' */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
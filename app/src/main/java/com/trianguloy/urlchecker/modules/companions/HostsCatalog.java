@@ -13,11 +13,16 @@ import org.json.JSONObject;
 /**
  * Catalog of hosts configuration. The whole hosts files are not included as ready-to-use copy like ClearURLs, because they are a lot bigger.
  * Instead, the configuration specifies the urls where to download them, and a parsed&optimized version is saved instead.
- * Manual update is required, they are too big and they should be updated in a background process
+ * They are updated manually, or periodically in background if enabled (see {@link Hosts#autoUpdate()})
  */
 public class HostsCatalog extends JsonCatalog {
 
+    /** For the editor (see {@link com.trianguloy.urlchecker.activities.JsonEditorInterface}) */
     public HostsCatalog(Activity cntx) {
+        this((Context) cntx);
+    }
+
+    public HostsCatalog(Context cntx) {
         super(cntx, "hosts", R.string.mHosts_editor);
     }
 
@@ -0,0 +1,446 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.util.Pair;
+
+import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.IDN;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The hosts database as a single binary file: a trie of the host labels in reverse order (com -> example -> www).
+ * The file is memory-mapped, a lookup is a single walk from the top level domain inward that returns the deepest match.
+ * Entries like '*.example.com' are wildcards: they match all subdomains of example.com (before an example.com entry), but not example.com itself.
+ * <p>
+ * Format (big endian):
+ * <pre>
+ * header:  magic(int) format(int) hostsCount(int) labelsCount(int) labelsPosition(int) rootPosition(int) filterPosition(int) filterBits(int)
+ * nodes:   [value wildcard childrenCount childrenCount*[labelPosition nodePosition]] (int each)
+ *          (value and wildcard are label indexes, -1 if none. Children are sorted by label, and written before their parent)
+ * strings: [length(unsigned short) bytes]...
+ * labels:  labelsCount * [label color] (string positions, int each)
+ * filter:  filterBits/8 bytes
+ * </pre>
+ * Hosts are stored normalized: lowercase ascii (idn as punycode) without trailing dot.
+ * <p>
+ * The filter is a bloom filter of all the hosts (the domain, for wildcards). Most lookups are for hosts not in the database,
+ * those are discarded by checking the host and its parent domains in the filter, without walking the trie.
+ */
+public class HostsFile {
+
+    private static final int MAGIC = 0x55434853; // "UCHS"
+    private static final int FORMAT = 3;
+    private static final int MAX_LENGTH = 0xFFFF;
+
+    /** Bloom filter parameters, for a ~0.3% false positive rate per checked domain */
+    private static final int FILTER_BITS_PER_HOST = 12;
+    private static final int FILTER_HASHES = 8;
+
+    /** Separator of the labels in a key, lower than any host character so that keys are sorted label by label */
+    static final char KEY_SEPARATOR = '\u0001';
+    private static final String WILDCARD = "*";
+
+    /* ------------------- keys ------------------- */
+
+    /**
+     * Normalizes a host (lowercase ascii, without trailing dot), keeping a '*.' wildcard prefix.
+     * Returns null if invalid.
+     */
+    public static String normalize(String host) {
+        var wildcard = host.startsWith(WILDCARD + ".");
+        if (wildcard) host = host.substring(2);
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        if (host.isEmpty() || host.contains(WILDCARD) || host.length() > MAX_LENGTH / 3) return null;
+        if (!isAscii(host)) {
+            try {
+                host = IDN.toASCII(host);
+            } catch (IllegalArgumentException e) {
+                // not a valid host
+                return null;
+            }
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        return wildcard ? WILDCARD + "." + host : host;
+    }
+
+    /** Converts a normalized host into its trie key: the labels in reverse order (www.example.com -> com example www) */
+    static String toKey(String host) {
+        var key = new StringBuilder(host.length());
+        var end = host.length();
+        while (end >= 0) {
+            var start = host.lastIndexOf('.', end - 1) + 1;
+            if (key.length() > 0) key.append(KEY_SEPARATOR);
+            key.append(host, start, end);
+            end = start - 1;
+        }
+        return key.toString();
+    }
+
+    /**
+     * Hash of a host (for the bloom filter), computed from its last char to the first, so that
+     * the hashes of all its parent domains are obtained while computing it.
+     * This is one step, for a [hash] of the chars after [c] (or {@link #HASH_SEED} if none)
+     */
+    private static long hashStep(long hash, char c) {
+        // FNV-1a
+        return (hash ^ c) * 0x100000001b3L;
+    }
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+
+    /** Returns the bit index of the [i]th hash of a filter with [bits], using double hashing */
+    private static int getFilterBit(long hash, int i, int bits) {
+        var combined = (int) hash + i * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % bits;
+    }
+
+    /** Returns true if all chars of [string] are ascii */
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /* ------------------- write ------------------- */
+
+    /**
+     * Writes the trie from keys (see {@link #toKey}) given in sorted order.
+     * Only the nodes of the current path are kept in memory.
+     */
+    static class Writer implements Closeable {
+        private final File file;
+        private final File temp;
+        private final DataOutputStream out;
+        /** the hashes of the hosts, for the filter (which can't be sized until all hosts are known) */
+        private final File hashesFile;
+        private final DataOutputStream hashes;
+
+        /** the label indexes */
+        private final Map<Pair<String, String>, Integer> labels = new LinkedHashMap<>();
+        /** the nodes of the current path, from the root */
+        private final List<Node> path = new ArrayList<>();
+        private int count = 0;
+        private String lastKey = null;
+        private boolean committed = false;
+
+        /** A node not yet written */
+        private static class Node {
+            final String label;
+            int value = -1;
+            int wildcard = -1;
+            final List<int[]> children = new ArrayList<>(); // [labelPosition, nodePosition]
+
+            Node(String label) {
+                this.label = label;
+            }
+        }
+
+        Writer(File file) throws IOException {
+            this.file = file;
+            temp = new File(file.getPath() + ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            // header, positions unknown yet
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            for (int i = 0; i < 6; i++) out.writeInt(0);
+            path.add(new Node(null));
+
+            hashesFile = new File(file.getPath() + ".hashes");
+            hashes = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(hashesFile)));
+        }
+
+        /** Adds a [key] with its [label]. Keys must be added in sorted order, without duplicates */
+        void add(String key, Pair<String, String> label) throws IOException {
+            if (lastKey != null && lastKey.compareTo(key) >= 0) throw new IllegalArgumentException("Unsorted key " + key);
+            lastKey = key;
+
+            var parts = key.split(String.valueOf(KEY_SEPARATOR), -1);
+            var wildcard = parts[parts.length - 1].equals(WILDCARD);
+            var depth = wildcard ? parts.length - 1 : parts.length;
+
+            // close the nodes not in this path
+            var shared = 0;
+            while (shared < depth && shared + 1 < path.size() && path.get(shared + 1).label.equals(parts[shared])) shared++;
+            while (path.size() > shared + 1) closeNode();
+
+            // open the new ones
+            for (int i = shared; i < depth; i++) path.add(new Node(parts[i]));
+
+            var node = path.get(path.size() - 1);
+            if (wildcard) node.wildcard = getLabelIndex(label);
+            else node.value = getLabelIndex(label);
+            count++;
+
+            // hash of the host (from the last char), the labels of the key are already reversed
+            var hash = HASH_SEED;
+            for (int i = 0; i < depth; i++) {
+                if (i > 0) hash = hashStep(hash, '.');
+                for (int c = parts[i].length() - 1; c >= 0; c--) hash = hashStep(hash, parts[i].charAt(c));
+            }
+            hashes.writeLong(hash);
+        }
+
+        /** Writes the pending nodes, the labels and the header, and replaces the file */
+        void commit() throws IOException {
+            while (path.size() > 1) closeNode();
+            var rootPosition = writeNode(path.get(0));
+
+            var labelPositions = new int[labels.size() * 2];
+            var index = 0;
+            for (var label : labels.keySet()) {
+                labelPositions[index++] = writeString(label.first);
+                labelPositions[index++] = writeString(label.second);
+            }
+            var labelsPosition = out.size();
+            for (var position : labelPositions) out.writeInt(position);
+
+            // filter
+            hashes.close();
+            var filterBits = (int) Math.min(Integer.MAX_VALUE - 7, Math.max(64, (long) count * FILTER_BITS_PER_HOST)) / 8 * 8;
+            var filter = new byte[filterBits / 8];
+            try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(hashesFile)))) {
+                for (int i = 0; i < count; i++) {
+                    var hash = in.readLong();
+                    for (int h = 0; h < FILTER_HASHES; h++) {
+                        var bit = getFilterBit(hash, h, filterBits);
+                        filter[bit >>> 3] |= 1 << (bit & 7);
+                    }
+                }
+            }
+            var filterPosition = out.size();
+            out.write(filter);
+            out.close();
+
+            // now fill the header
+            try (var raf = new RandomAccessFile(temp, "rw")) {
+                raf.seek(2 * 4);
+                raf.writeInt(count);
+                raf.writeInt(labels.size());
+                raf.writeInt(labelsPosition);
+                raf.writeInt(rootPosition);
+                raf.writeInt(filterPosition);
+                raf.writeInt(filterBits);
+            }
+
+            if (!temp.renameTo(file)) throw new IOException("Can't replace " + file);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            hashes.close();
+            hashesFile.delete();
+            if (!committed) temp.delete();
+        }
+
+        /** Writes the last node of the path, and adds it to its parent */
+        private void closeNode() throws IOException {
+            var node = path.remove(path.size() - 1);
+            var position = writeNode(node);
+            path.get(path.size() - 1).children.add(new int[]{writeString(node.label), position});
+        }
+
+        /** Writes a node, returns its position */
+        private int writeNode(Node node) throws IOException {
+            var position = out.size();
+            out.writeInt(node.value);
+            out.writeInt(node.wildcard);
+            out.writeInt(node.children.size());
+            for (var child : node.children) {
+                out.writeInt(child[0]);
+                out.writeInt(child[1]);
+            }
+            return position;
+        }
+
+        /** Writes a string, returns its position */
+        private int writeString(String string) throws IOException {
+            var position = out.size();
+            var bytes = string.getBytes(StreamUtils.UTF_8);
+            if (bytes.length > MAX_LENGTH) bytes = new byte[0];
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            return position;
+        }
+
+        /** Returns the index of [label], adding it if new */
+        private int getLabelIndex(Pair<String, String> label) {
+            var index = labels.get(label);
+            if (index == null) labels.put(label, index = labels.size());
+            return index;
+        }
+    }
+
+    /* ------------------- read ------------------- */
+
+    private final ByteBuffer buffer;
+    private final int hostsCount;
+    private final int labelsPosition;
+    private final int rootPosition;
+    private final int filterPosition;
+    private final int filterBits;
+    /** decoded labels, by index */
+    private final Pair<String, String>[] labels;
+
+    /** Maps [file], returns null if it doesn't exist or is invalid */
+    public static HostsFile open(File file) {
+        if (!file.exists()) return null;
+        try (var raf = new RandomAccessFile(file, "r"); var channel = raf.getChannel()) {
+            // the mapping remains valid after closing
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) return null;
+            return new HostsFile(buffer);
+        } catch (IOException | IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            // missing, old or corrupted file
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HostsFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+        hostsCount = buffer.getInt(8);
+        labelsPosition = buffer.getInt(16);
+        rootPosition = buffer.getInt(20);
+        filterPosition = buffer.getInt(24);
+        filterBits = buffer.getInt(28);
+        labels = new Pair[buffer.getInt(12)];
+    }
+
+    /** The number of hosts */
+    public int size() {
+        return hostsCount;
+    }
+
+    /**
+     * Returns the label and color of the deepest entry matching [host]: itself, a parent domain or a wildcard.
+     * If [exact], only an entry of the host itself. Null if none.
+     */
+    public Pair<String, String> get(String host, boolean exact) {
+        // ascii hosts (almost all) are compared directly, without allocations
+        if (!isAscii(host)) {
+            try {
+                host = IDN.toASCII(host);
+            } catch (IllegalArgumentException e) {
+                // not a valid host
+                return null;
+            }
+        }
+
+        var end = host.endsWith(".") ? host.length() - 1 : host.length();
+        if (!mightContain(host, end, exact)) return null;
+
+        var node = rootPosition;
+        var best = -1;
+        while (end >= 0) {
+            // the host is a subdomain of this node
+            var wildcard = buffer.getInt(node + 4);
+            if (!exact && wildcard != -1) best = wildcard;
+
+            // next label, from the right
+            var start = host.lastIndexOf('.', end - 1) + 1;
+            node = getChild(node, host, start, end);
+            if (node == -1) break;
+
+            var value = buffer.getInt(node);
+            if (value != -1 && (!exact || start == 0)) best = value;
+            end = start - 1;
+        }
+        return best == -1 ? null : getLabel(best);
+    }
+
+    /**
+     * Checks the filter for host[0, end) and, unless [exact], its parent domains.
+     * Returns false if none of them is in the database, true if some may be.
+     */
+    private boolean mightContain(String host, int end, boolean exact) {
+        var hash = HASH_SEED;
+        for (int i = end - 1; i >= 0; i--) {
+            var c = host.charAt(i);
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            hash = hashStep(hash, c);
+            // a full label was hashed
+            if ((i == 0 || !exact && host.charAt(i - 1) == '.') && isInFilter(hash)) return true;
+        }
+        return false;
+    }
+
+    /** Returns true if a host with [hash] may be in the filter */
+    private boolean isInFilter(long hash) {
+        for (int h = 0; h < FILTER_HASHES; h++) {
+            var bit = getFilterBit(hash, h, filterBits);
+            if ((buffer.get(filterPosition + (bit >>> 3)) & (1 << (bit & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Returns the position of the child of [node] with label host[start, end), -1 if none */
+    private int getChild(int node, String host, int start, int end) {
+        // binary search
+        int low = 0;
+        int high = buffer.getInt(node + 8) - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var child = node + 12 + middle * 8;
+            var comparison = compare(buffer.getInt(child), host, start, end);
+            if (comparison < 0) low = middle + 1;
+            else if (comparison > 0) high = middle - 1;
+            else return buffer.getInt(child + 4);
+        }
+        return -1;
+    }
+
+    /** Compares the string at [position] with host[start, end), ignoring the host case */
+    private int compare(int position, String host, int start, int end) {
+        var length = buffer.getShort(position) & 0xFFFF;
+        var hostLength = end - start;
+        for (int i = 0; i < length && i < hostLength; i++) {
+            var stored = buffer.get(position + 2 + i) & 0xFF;
+            var other = host.charAt(start + i);
+            if (other >= 'A' && other <= 'Z') other += 'a' - 'A';
+            if (stored != other) return stored - other;
+        }
+        return length - hostLength;
+    }
+
+    /** Returns the label [index] */
+    private synchronized Pair<String, String> getLabel(int index) {
+        if (labels[index] == null) {
+            labels[index] = Pair.create(
+                    readString(buffer.getInt(labelsPosition + index * 8)),
+                    readString(buffer.getInt(labelsPosition + index * 8 + 4))
+            );
+        }
+        return labels[index];
+    }
+
+    /** Returns the string at [position] */
+    private String readString(int position) {
+        var bytes = new byte[buffer.getShort(position) & 0xFFFF];
+        var view = buffer.duplicate();
+        view.position(position + 2);
+        view.get(bytes);
+        return new String(bytes, StreamUtils.UTF_8);
+    }
+}
@@ -3,11 +3,11 @@ package com.trianguloy.urlchecker.modules.companions;
 import android.content.ComponentName;
 import android.content.Context;
 
+import com.trianguloy.urlchecker.url.UrlData;
 import com.trianguloy.urlchecker.utilities.generics.GenericPref;
 import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 import com.trianguloy.urlchecker.utilities.wrappers.IntentApp;
 
-import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -48,17 +48,19 @@ public class LastOpened {
     /**
      * Sorts an existing list of [intentApps] with the preferred order
      */
-    public void sort(List<IntentApp> intentApps, String url) {
+    public void sort(List<IntentApp> intentApps, UrlData urlData) {
+        var domain = getDomain(urlData);
         Collections.sort(intentApps, (from, another) ->
-                comparePrefer(from.getComponent(), another.getComponent(), url));
+                comparePrefer(from.getComponent(), another.getComponent(), domain));
     }
 
     /**
      * Marks the [prefer] intentApp as preferred over [others].
      */
-    public void prefer(IntentApp prefer, List<IntentApp> others, String url) {
+    public void prefer(IntentApp prefer, List<IntentApp> others, UrlData urlData) {
+        var domain = getDomain(urlData);
         for (var other : others) {
-            prefer(prefer.getComponent(), other.getComponent(), 1, url);
+            prefer(prefer.getComponent(), other.getComponent(), 1, domain);
         }
     }
 
@@ -67,18 +69,18 @@ public class LastOpened {
     /**
      * Marks that [prefer] component is preferred over [other] as much as [amount] more
      */
-    private void prefer(ComponentName prefer, ComponentName other, int amount, String url) {
+    private void prefer(ComponentName prefer, ComponentName other, int amount, String domain) {
         // skip prefer over ourselves, it's useless
         if (prefer.equals(other)) return;
 
         // switch order if not lexicographically sorted
         if (prefer.compareTo(other) > 0) {
-            prefer(other, prefer, -amount, url);
+            prefer(other, prefer, -amount, domain);
             return;
         }
 
         // update preference (we subtract because negative means preferred)
-        GenericPref.Int pref = getPref(prefer, other, url);
+        GenericPref.Int pref = getPref(prefer, other, domain);
         pref.set(JavaUtils.clamp(-MAX, pref.get() - amount, MAX));
     }
 
@@ -86,43 +88,40 @@ public class LastOpened {
      * Returns the current preference between these two components.
      * Equivalent result as [from].compareTo([another])
      */
-    private int comparePrefer(ComponentName from, ComponentName another, String url) {
+    private int comparePrefer(ComponentName from, ComponentName another, String domain) {
         // switch order if not lexicographically sorted
         if (from.compareTo(another) > 0) {
-            return -comparePrefer(another, from, url);
+            return -comparePrefer(another, from, domain);
         }
 
         // get preference
-        return getPref(from, another, url).get();
+        return getPref(from, another, domain).get();
     }
 
     /**
      * The preference between two components. ([left] must be lexicographically less than [right])
      */
-    private GenericPref.Int getPref(ComponentName left, ComponentName right, String url) {
+    private GenericPref.Int getPref(ComponentName left, ComponentName right, String domain) {
         String prefName = String.format(PREFIX, left.flattenToShortString(), right.flattenToShortString());
-        if (perDomainPref.get()) {
-            prefName = getDomain(url) + " " + prefName;
+        if (domain != null) {
+            prefName = domain + " " + prefName;
         }
 
         return new GenericPref.Int(prefName, 0, cntx);
     }
 
     /**
-     * Get top level domain and first subdomain (if any) from a given url
+     * Get top level domain and first subdomain (if any) from a given url, null if not per domain
      * a.b.c.d => c.d
      * a.b.c => b.c
      * a.b => a.b
      * a => a
      */
-    private String getDomain(String url) {
-        try {
-            List<String> domainParts = Arrays.asList(new URL(url).getHost().split("\\."));
-            return String.join(".", domainParts.size() <= 1 ? domainParts : domainParts.subList(domainParts.size() - 2, domainParts.size()));
-        } catch (Exception e) {
-            // can't get
-            e.printStackTrace();
-            return "";
-        }
+    private String getDomain(UrlData urlData) {
+        if (!perDomainPref.get()) return null;
+        var host = urlData.getParts().getHost();
+        if (host == null) return ""; // can't get
+        List<String> domainParts = Arrays.asList(host.split("\\."));
+        return String.join(".", domainParts.size() <= 1 ? domainParts : domainParts.subList(domainParts.size() - 2, domainParts.size()));
     }
 }
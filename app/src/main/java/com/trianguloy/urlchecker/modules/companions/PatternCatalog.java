@@ -1,21 +1,32 @@
 package com.trianguloy.urlchecker.modules.companions;
 
+import static com.trianguloy.urlchecker.utilities.methods.UrlUtils.decode;
+
 import android.app.Activity;
 import android.content.Context;
 
 import com.trianguloy.urlchecker.R;
 import com.trianguloy.urlchecker.utilities.generics.JsonCatalog;
+import com.trianguloy.urlchecker.utilities.wrappers.RegexFix;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.URLEncoder;
+import java.util.Random;
+
 /**
  * Represents the catalog of the Pattern module
  */
 public class PatternCatalog extends JsonCatalog {
 
+    /** For the editor (see {@link com.trianguloy.urlchecker.activities.JsonEditorInterface}) */
     public PatternCatalog(Activity cntx) {
+        this((Context) cntx);
+    }
+
+    public PatternCatalog(Context cntx) {
         super(cntx, "patterns", R.string.mPttrn_editor);
     }
 
@@ -75,4 +86,66 @@ public class PatternCatalog extends JsonCatalog {
                 ;
     }
 
-}
\ No newline at end of file
+    /**
+     * Checks the pattern [data] (an entry of the [snapshot] catalog) against [url].
+     * Returns null if it is disabled or doesn't match,
+     * otherwise the url after applying its replacement (the same url if it has none, see {@link #hasReplacement}).
+     */
+    public static String match(Snapshot snapshot, JSONObject data, String url, RegexFix regexFix) throws JSONException {
+        // enabled?
+        if (!data.optBoolean("enabled", true)) return null;
+
+        // get regex (must exists)
+        if (!data.has("regex")) return null;
+
+        // encode if required
+        if (data.optBoolean("encode")) {
+            url = URLEncoder.encode(url);
+        }
+
+        // check matches
+        // if 'regex' matches, the pattern can match
+        // if 'regex' doesn't match, the patter doesn't match
+        var regex_matcher = snapshot.getPattern(data.getString("regex")).matcher(url);
+        if (!regex_matcher.find()) return null;
+        if (data.has("excludeRegex")) {
+            // if 'excludeRegex' doesn't exist, the pattern can match
+            // if 'excludeRegex' matches, the pattern doesn't matches
+            // if 'excludeRegex' doesn't match, the pattern can match
+            if (snapshot.getPattern(data.getString("excludeRegex")).matcher(url).find()) return null;
+        }
+
+        // check replacements
+        var replacements = data.opt("replacement");
+        if (replacements == null) return url;
+
+        String replacement;
+        if (replacements instanceof JSONArray replacementsArray) {
+            // array, get random
+            replacement = replacementsArray.getString(new Random().nextInt(replacementsArray.length()));
+        } else {
+            // single data, get that one
+            replacement = replacements.toString();
+        }
+
+        // replace url
+        var newUrl = regexFix.replaceAll(url, regex_matcher, replacement);
+
+        // decode if required
+        if (data.optBoolean("decode")) {
+            newUrl = decode(newUrl);
+        }
+        return newUrl;
+    }
+
+    /** True if the pattern [data] replaces the url when it matches */
+    public static boolean hasReplacement(JSONObject data) {
+        return data.has("replacement");
+    }
+
+    /** True if the replacement of the pattern [data] must be applied without asking */
+    public static boolean isAutomatic(JSONObject data) {
+        return data.optBoolean("automatic");
+    }
+
+}
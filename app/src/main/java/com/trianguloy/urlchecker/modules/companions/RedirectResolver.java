@@ -0,0 +1,128 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.content.Context;
+
+import com.trianguloy.urlchecker.utilities.methods.HttpUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Follows the redirections of an url, without downloading any content.
+ * Each url is probed with a HEAD request, and with a GET of just its first byte if the server doesn't accept HEAD.
+ * The result of each url is cached for a while (see {@link ResolutionCache}), so checking it again (or a chain that shares it) is instant.
+ * Errors are not cached, they may be temporary.
+ */
+public class RedirectResolver {
+
+    /** Max number of requests of a chain */
+    public static final int MAX_HOPS = 10;
+
+    /** A checked [url], with its response [code] and the absolute url it redirects to ([location], null if none) */
+    public record Hop(String url, int code, String location) {
+    }
+
+    /**
+     * The [hops] of a chain, in order.
+     * [loop] if the last one redirects to a previous one, [truncated] if it was stopped before the end.
+     */
+    public record Chain(List<Hop> hops, boolean loop, boolean truncated) {
+        /** The last url reached */
+        public String getFinalUrl() {
+            var last = hops.get(hops.size() - 1);
+            return last.location != null && !loop ? last.location : last.url;
+        }
+    }
+
+    private final ResolutionCache cache;
+
+    public RedirectResolver(Context cntx) {
+        cache = new ResolutionCache(cntx);
+    }
+
+    /** Same as {@link #resolve(String, int, boolean)}, using the cache */
+    public Chain resolve(String url, int maxHops) throws IOException {
+        return resolve(url, maxHops, true);
+    }
+
+    /**
+     * Follows the chain from [url], up to [maxHops] requests (cached ones don't count).
+     * Cached results are used only if [useCache], otherwise all urls are checked again (for explicit checks of the user).
+     * Throws if the first url can't be checked, errors on later ones just stop the chain (marked as truncated).
+     */
+    public Chain resolve(String url, int maxHops, boolean useCache) throws IOException {
+        var hops = new ArrayList<Hop>();
+        var visited = new HashSet<String>();
+        var requests = 0;
+        var current = url;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+            visited.add(current);
+
+            // check
+            var hop = useCache ? getCached(current) : null;
+            if (hop == null) {
+                if (requests >= maxHops) return new Chain(hops, false, true);
+                requests++;
+                try {
+                    hop = probe(current);
+                } catch (IOException e) {
+                    if (hops.isEmpty()) throw e;
+                    e.printStackTrace();
+                    return new Chain(hops, false, true);
+                }
+                if (hop.code < 400) cache.put(ResolutionCache.Kind.STATUS, current, hop.code + (hop.location == null ? "" : " " + hop.location));
+            }
+            hops.add(hop);
+
+            // next
+            if (hop.location == null) return new Chain(hops, false, false);
+            if (visited.contains(hop.location)) return new Chain(hops, true, false);
+            current = hop.location;
+        }
+    }
+
+    /** Returns the cached result of [url], null if not cached */
+    private Hop getCached(String url) {
+        var value = cache.get(ResolutionCache.Kind.STATUS, url);
+        if (value == null) return null;
+        try {
+            // 'code[ location]'
+            var separator = value.indexOf(' ');
+            return separator == -1
+                    ? new Hop(url, Integer.parseInt(value), null)
+                    : new Hop(url, Integer.parseInt(value.substring(0, separator)), value.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** Checks a single [url] */
+    private static Hop probe(String url) throws IOException {
+        var hop = request(url, true);
+        // some servers don't implement HEAD
+        if (hop.code >= 400) hop = request(url, false);
+        return hop;
+    }
+
+    /** A HEAD request of [url], or a GET of just its first byte if not [head] */
+    private static Hop request(String url, boolean head) throws IOException {
+        return HttpUtils.connect(url, connection -> {
+            connection.setInstanceFollowRedirects(false);
+            if (head) connection.setRequestMethod("HEAD");
+            else connection.setRequestProperty("Range", "bytes=0-0");
+
+            var code = connection.getResponseCode();
+            var location = code >= 300 && code < 400 ? connection.getHeaderField("Location") : null;
+            return new Hop(url, code == HttpURLConnection.HTTP_PARTIAL ? HttpURLConnection.HTTP_OK : code,
+                    location == null ? null : new URL(new URL(url), location).toExternalForm() // Deal with relative URLs
+            );
+        });
+    }
+}
@@ -0,0 +1,199 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.content.Context;
+
+import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of the network results of an url (status, unshortened url, virustotal report...), shared by all modules.
+ * Each kind of result has its own expiration time. The least recently used entries are removed when full.
+ * <p>
+ * Saved as an append-only log, one line per entry: kind[tab]time[tab]url[tab]value (escaped), later lines replace previous ones.
+ * It is compacted when it has too many replaced lines.
+ */
+public class ResolutionCache {
+
+    public static final String FILE = "resolution_cache";
+
+    private static final int MAX_ENTRIES = 1000;
+
+    /** The kinds of results, with how long they are valid */
+    public enum Kind {
+        /** A single request (see {@link RedirectResolver}) */
+        STATUS(10 * 60 * 1000L),
+        /** The final url of a short one (see {@link Unshortener}) */
+        UNSHORTEN(30 * 24 * 60 * 60 * 1000L),
+        /** A virustotal report (see {@link VirusTotalUtility}) */
+        VIRUSTOTAL(24 * 60 * 60 * 1000L);
+
+        private final long ttl;
+
+        Kind(long ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    private record Entry(Kind kind, String url, String value, long time) {
+        boolean isExpired() {
+            return System.currentTimeMillis() - time > kind.ttl;
+        }
+    }
+
+    /** The entries, by kind and url, least recently used first. Loaded when first needed, synchronized on the class */
+    private static Map<String, Entry> entries = null;
+    /** Number of lines of the file */
+    private static int lines = 0;
+
+    private final File file;
+
+    public ResolutionCache(Context cntx) {
+        file = cntx.getFileStreamPath(FILE);
+    }
+
+    /** Returns the [kind] value of [url], null if not saved or expired */
+    public String get(Kind kind, String url) {
+        synchronized (ResolutionCache.class) {
+            var key = getKey(kind, url);
+            var entry = getEntries().get(key);
+            if (entry == null) return null;
+            if (entry.isExpired()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    /** Saves the [kind] [value] of [url] */
+    public void put(Kind kind, String url, String value) {
+        synchronized (ResolutionCache.class) {
+            var entry = new Entry(kind, url, value, System.currentTimeMillis());
+            getEntries().put(getKey(kind, url), entry);
+
+            if (lines >= MAX_ENTRIES * 2 && compact()) {
+                // too many replaced lines, rewritten (including this entry)
+                return;
+            }
+
+            try (var writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StreamUtils.UTF_8))) {
+                write(writer, entry);
+                lines++;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /* ------------------- internal ------------------- */
+
+    private static String getKey(Kind kind, String url) {
+        return kind.name() + '\t' + url;
+    }
+
+    /** Returns the entries, loading them if needed. Must be called synchronized */
+    private Map<String, Entry> getEntries() {
+        if (entries != null) return entries;
+
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+        lines = 0;
+        if (!file.exists()) return entries;
+
+        try (var reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StreamUtils.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                var entry = read(line);
+                if (entry != null && !entry.isExpired()) entries.put(getKey(entry.kind, entry.url), entry);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return entries;
+    }
+
+    /**
+     * Rewrites the file with just the current entries (replaced atomically). Must be called synchronized.
+     * Returns false if it couldn't, it will be retried after some more entries.
+     */
+    private boolean compact() {
+        var temp = new File(file.getPath() + ".tmp");
+        var written = 0;
+        try (var writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StreamUtils.UTF_8))) {
+            for (var entry : entries.values()) {
+                if (entry.isExpired()) continue;
+                write(writer, entry);
+                written++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            lines = entries.size();
+            return false;
+        }
+        if (temp.renameTo(file)) {
+            lines = written;
+            return true;
+        }
+        temp.delete();
+        lines = entries.size();
+        return false;
+    }
+
+    /** Writes an [entry] line */
+    private static void write(Writer writer, Entry entry) throws IOException {
+        writer.write(entry.kind.name() + '\t' + entry.time + '\t' + escape(entry.url) + '\t' + escape(entry.value) + '\n');
+    }
+
+    /** Parses an entry line, null if invalid */
+    private static Entry read(String line) {
+        var parts = line.split("\t", -1);
+        if (parts.length != 4) return null;
+        try {
+            return new Entry(Kind.valueOf(parts[0]), unescape(parts[2]), unescape(parts[3]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException e) {
+            // unknown kind or invalid time
+            return null;
+        }
+    }
+
+    /** Escapes the separators: backslash, tab and newlines */
+    private static String escape(String string) {
+        return string.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /** Reverts {@link #escape} */
+    private static String unescape(String string) {
+        if (string.indexOf('\\') == -1) return string;
+        var sb = new StringBuilder(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            var c = string.charAt(i);
+            if (c == '\\' && i + 1 < string.length()) {
+                c = string.charAt(++i);
+                switch (c) {
+                    case 't' -> c = '\t';
+                    case 'n' -> c = '\n';
+                    case 'r' -> c = '\r';
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.content.Context;
+
+import com.trianguloy.urlchecker.url.UrlParts;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Unshortens urls locally, by following their redirections (see {@link RedirectResolver}).
+ * Resolved urls are saved (see {@link ResolutionCache}), so unshortening them again doesn't need any request.
+ * The requests to the same shortener are limited, to avoid being blocked.
+ */
+public class Unshortener {
+
+    /** Max number of simultaneous unshortenings of the same host */
+    private static final int MAX_PER_HOST = 2;
+
+    /** The limits of the hosts being unshortened, removed when unused */
+    private static final Map<String, HostLimit> hostLimits = new HashMap<>();
+
+    private final RedirectResolver resolver;
+    private final ResolutionCache cache;
+
+    public Unshortener(Context cntx) {
+        resolver = new RedirectResolver(cntx);
+        cache = new ResolutionCache(cntx);
+    }
+
+    /**
+     * Returns the url that [url] finally redirects to (the same url if none).
+     * Throws if it can't be checked.
+     */
+    public String unshort(String url) throws IOException {
+        var cached = cache.get(ResolutionCache.Kind.UNSHORTEN, url);
+        if (cached != null) return cached;
+
+        var host = new UrlParts(url).getHost();
+        var limit = useHostLimit(host);
+        try {
+            limit.semaphore.acquire();
+        } catch (InterruptedException e) {
+            releaseHostLimit(host, limit);
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        }
+        try {
+            // may have been resolved while waiting
+            cached = cache.get(ResolutionCache.Kind.UNSHORTEN, url);
+            if (cached != null) return cached;
+
+            var chain = resolver.resolve(url, RedirectResolver.MAX_HOPS);
+            var finalUrl = chain.getFinalUrl();
+            // only complete chains that ended well, errors (blocked, not found...) may be temporary
+            var lastCode = chain.hops().get(chain.hops().size() - 1).code();
+            if (!chain.truncated() && lastCode >= 200 && lastCode < 400) cache.put(ResolutionCache.Kind.UNSHORTEN, url, finalUrl);
+            return finalUrl;
+        } finally {
+            limit.semaphore.release();
+            releaseHostLimit(host, limit);
+        }
+    }
+
+    /* ------------------- internal ------------------- */
+
+    /** The limit of simultaneous requests to a host, and the number of [users] of it (waiting or running) */
+    private static class HostLimit {
+        final Semaphore semaphore = new Semaphore(MAX_PER_HOST, true);
+        int users = 0;
+    }
+
+    /** Returns the limit of [host], registering a user. Must be released with {@link #releaseHostLimit} */
+    private static HostLimit useHostLimit(String host) {
+        synchronized (hostLimits) {
+            var limit = hostLimits.get(host);
+            if (limit == null) hostLimits.put(host, limit = new HostLimit());
+            limit.users++;
+            return limit;
+        }
+    }
+
+    /** Unregisters a user of the [limit] of [host], which is removed if no longer used */
+    private static void releaseHostLimit(String host, HostLimit limit) {
+        synchronized (hostLimits) {
+            if (--limit.users == 0) hostLimits.remove(host);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import android.content.Context;
+import android.util.Pair;
+
+import com.trianguloy.urlchecker.modules.ModuleManager;
+import com.trianguloy.urlchecker.modules.list.ClearUrlModule;
+import com.trianguloy.urlchecker.modules.list.HostsModule;
+import com.trianguloy.urlchecker.modules.list.PatternModule;
+import com.trianguloy.urlchecker.url.UrlParts;
+import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
+import com.trianguloy.urlchecker.utilities.wrappers.RegexFix;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Cleans urls without any ui, with the non-interactive part of the modules:
+ * the ClearUrl rules, the automatic patterns, the hosts labels and (optionally) the status code.
+ * Only the enabled modules are used, with their current settings.
+ * <p>
+ * The rules are loaded once, so the same instance should be used for many urls. Can be used from any thread, and doesn't need an activity.
+ */
+public class UrlCleaner {
+
+    /** Max number of changes of an url, in case some rules undo each other */
+    private static final int MAX_CHANGES = 10;
+
+    /** Status when not checked */
+    public static final int NOT_CHECKED = 0;
+    /** Status when it couldn't be checked */
+    public static final int CHECK_ERROR = -1;
+
+    /**
+     * The result of cleaning an [url]: the [cleaned] url, the providers and patterns [applied] (in order), if a provider [blocked] it,
+     * the number of [queries] left, the hosts [label] (label and color, null if none) and the [status] code (or {@link #NOT_CHECKED}/{@link #CHECK_ERROR})
+     */
+    public record Result(String url, String cleaned, List<String> applied, boolean blocked, int queries, Pair<String, String> label, int status) {
+        /** True if the cleaned url is different */
+        public boolean isChanged() {
+            return !url.equals(cleaned);
+        }
+    }
+
+    private final ClearUrlRules rules;
+    private final boolean allowReferral;
+    private final PatternCatalog patterns;
+    private final RegexFix regexFix;
+    private final boolean useHosts;
+    private final RedirectResolver resolver;
+    private final Context cntx;
+
+    public UrlCleaner(Context cntx) {
+        this.cntx = cntx;
+        rules = ModuleManager.getEnabledPrefOfModule(new ClearUrlModule(), cntx).get()
+                ? ClearUrlCatalog.getRules(cntx)
+                : ClearUrlRules.EMPTY;
+        allowReferral = ClearUrlModule.REFERRAL_PREF(cntx).get();
+        patterns = ModuleManager.getEnabledPrefOfModule(new PatternModule(), cntx).get()
+                ? new PatternCatalog(cntx)
+                : null;
+        regexFix = new RegexFix(cntx);
+        useHosts = ModuleManager.getEnabledPrefOfModule(new HostsModule(), cntx).get();
+        resolver = new RedirectResolver(cntx);
+    }
+
+    /** Cleans an [url], and checks the status code of the result if [checkStatus] (a network request, the cache is not used for this explicit check) */
+    public Result clean(String url, boolean checkStatus) {
+        var applied = new ArrayList<String>();
+        var blocked = new boolean[]{false};
+
+        // apply until nothing changes
+        var cleaned = url;
+        for (int changes = 0; changes < MAX_CHANGES; changes++) {
+            var next = cleanOnce(cleaned, applied, blocked);
+            if (next.equals(cleaned)) break;
+            cleaned = next;
+        }
+
+        // analyze the final url
+        var parts = new UrlParts(cleaned);
+        var queries = parts.getParameters().size();
+        var label = !useHosts || parts.getScheme() == null || parts.getHost() == null ? null : Hosts.lookup(parts.getHost(), cntx);
+
+        var status = NOT_CHECKED;
+        if (checkStatus) {
+            try {
+                status = resolver.resolve(cleaned, 1, false).hops().get(0).code();
+            } catch (IOException e) {
+                e.printStackTrace();
+                status = CHECK_ERROR;
+            }
+        }
+
+        return new Result(url, cleaned, Collections.unmodifiableList(applied), blocked[0], queries, label, status);
+    }
+
+    /* ------------------- internal ------------------- */
+
+    /** Applies the ClearUrl rules to [url], or the first automatic pattern if they don't change it */
+    private String cleanOnce(String url, List<String> applied, boolean[] blocked) {
+        // clearUrl
+        var cleaned = rules.clean(url, allowReferral, new ClearUrlRules.CleanListener() {
+            /** the provider being applied */
+            private String current;
+
+            @Override
+            public void onMatch(ClearUrlRules.Provider provider) {
+                current = provider.name;
+            }
+
+            @Override
+            public void onBlocked(ClearUrlRules.Provider provider) {
+                blocked[0] = true;
+            }
+
+            @Override
+            public void onRedirection(ClearUrlRules.Provider provider, Pattern redirection) {
+                addOnce(applied, provider.name);
+            }
+
+            @Override
+            public void onRawRule(ClearUrlRules.Provider provider, Pattern rawRule) {
+                addOnce(applied, provider.name);
+            }
+
+            @Override
+            public void onRule(boolean referral, String rule) {
+                addOnce(applied, current);
+            }
+        });
+        if (!cleaned.equals(url)) return cleaned;
+
+        // patterns
+        if (patterns == null) return url;
+        var snapshot = patterns.getSnapshot();
+        var catalog = snapshot.catalog;
+        for (var pattern : JavaUtils.toList(catalog.keys())) {
+            try {
+                var data = catalog.optJSONObject(pattern);
+                if (data == null || !PatternCatalog.isAutomatic(data) || !PatternCatalog.hasReplacement(data)) continue;
+
+                var newUrl = PatternCatalog.match(snapshot, data, url, regexFix);
+                if (newUrl != null && !newUrl.equals(url)) {
+                    addOnce(applied, pattern);
+                    return newUrl;
+                }
+            } catch (JSONException e) {
+                // invalid pattern? ignore
+                e.printStackTrace();
+            }
+        }
+        return url;
+    }
+
+    /** Adds [element] to [list] if not already present */
+    private static void addOnce(List<String> list, String element) {
+        if (!list.contains(element)) list.add(element);
+    }
+}
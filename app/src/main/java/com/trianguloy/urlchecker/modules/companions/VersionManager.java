@@ -84,7 +84,7 @@ public class VersionManager {
             var regex = prefs.getString("statusCode_autoCheck", "");
             if (!regex.isEmpty()) {
                 var automationRules = new AutomationRules(cntx);
-                var catalog = automationRules.getCatalog();
+                var catalog = automationRules.getEditableCatalog();
                 var name = cntx.getString(R.string.mStatus_check);
                 if (!catalog.has(name)) {
                     catalog.put(name, new JSONObject()
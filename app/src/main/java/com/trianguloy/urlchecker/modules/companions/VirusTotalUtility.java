@@ -33,13 +33,19 @@ public class VirusTotalUtility {
     public static InternalReponse scanUrl(String urlToScan, String key, Context cntx) {
         InternalReponse result = new InternalReponse();
 
-        String responseJSON;
-        try {
-            responseJSON = HttpUtils.performPOST(urlGetReport, getPOSTparameters(urlToScan, key));
-        } catch (IOException e) {
-            e.printStackTrace();
-            result.error = cntx.getString(R.string.mVT_connectError);
-            return result;
+        // a recent report, if available
+        var cache = new ResolutionCache(cntx);
+        var responseJSON = cache.get(ResolutionCache.Kind.VIRUSTOTAL, urlToScan);
+        var cached = responseJSON != null;
+
+        if (!cached) {
+            try {
+                responseJSON = HttpUtils.performPOST(urlGetReport, getPOSTparameters(urlToScan, key));
+            } catch (IOException e) {
+                e.printStackTrace();
+                result.error = cntx.getString(R.string.mVT_connectError);
+                return result;
+            }
         }
 
         // parse response
@@ -55,6 +61,11 @@ public class VirusTotalUtility {
                 result.scanUrl = response.optString("permalink", "");
 
                 result.error = null;
+
+                // only finished reports are saved
+                if (!cached && result.detectionsTotal > 0) {
+                    cache.put(ResolutionCache.Kind.VIRUSTOTAL, urlToScan, responseJSON);
+                }
                 return result;
             } else {
                 result.error = response.getString("verbose_msg"); // untranslated
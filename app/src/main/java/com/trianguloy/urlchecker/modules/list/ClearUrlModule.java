@@ -1,9 +1,6 @@
 package com.trianguloy.urlchecker.modules.list;
 
-import static com.trianguloy.urlchecker.utilities.methods.UrlUtils.decode;
-
 import android.content.Context;
-import android.util.Pair;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -16,18 +13,13 @@ import com.trianguloy.urlchecker.modules.AModuleData;
 import com.trianguloy.urlchecker.modules.AModuleDialog;
 import com.trianguloy.urlchecker.modules.AutomationRules;
 import com.trianguloy.urlchecker.modules.companions.ClearUrlCatalog;
+import com.trianguloy.urlchecker.modules.companions.ClearUrlRules;
 import com.trianguloy.urlchecker.url.UrlData;
 import com.trianguloy.urlchecker.utilities.generics.GenericPref;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
 import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.UnsupportedEncodingException;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -118,13 +110,10 @@ class ClearUrlDialog extends AModuleDialog {
     private final GenericPref.Bool verbose;
     private final GenericPref.Bool auto;
 
-    private final List<Pair<String, JSONObject>> rules;
+    private final ClearUrlRules rules;
     private TextView info;
     private Button fix;
 
-    private String cleared = null;
-    private Data data = null;
-
     public ClearUrlDialog(MainDialog dialog) {
         super(dialog);
         allowReferral = ClearUrlModule.REFERRAL_PREF(dialog);
@@ -148,9 +137,20 @@ class ClearUrlDialog extends AModuleDialog {
     }
 
     @Override
-    public void onModifyUrl(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
-        cleared = urlData.url;
-        data = new Data();
+    public boolean isPureAnalysis() {
+        return true;
+    }
+
+    @Override
+    public Object getAnalysisInput(UrlData urlData) {
+        // the whole url: providers are applied one after the other to the url cleaned by the previous ones,
+        // so the result of one can't be reused on its own. Those that can't match the host are already skipped by the rules
+        return List.of(urlData.url, urlData.getData(CLEARED) != null, allowReferral.get(), verbose.get(), auto.get());
+    }
+
+    @Override
+    public Object analyze(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
+        var data = new Data();
 
         if (urlData.getData(CLEARED) != null) {
             // was cleared
@@ -158,146 +158,61 @@ class ClearUrlDialog extends AModuleDialog {
             data.setColor(R.color.good);
         }
 
-        whileProvider:
-        for (Pair<String, JSONObject> rule : rules) {
-            // evaluate each provider
-            String provider = rule.first;
-            JSONObject providerData = rule.second;
-            try {
-                if (!matcher(providerData.getString("urlPattern"), cleared).find()) {
-                    continue;
-                }
-
-                // info
-                if (verbose.get()) data.addInfo(R.string.mClear_matches, provider);
-
-                // check blocked completeProvider
-                if (providerData.optBoolean("completeProvider", false)) {
-                    // provider blocked
-                    data.addInfo(R.string.mClear_blocked);
-                    data.setColor(R.color.bad);
-                    continue;
-                }
+        var cleared = rules.clean(urlData.url, allowReferral.get(), new ClearUrlRules.CleanListener() {
+            @Override
+            public void onInvalid(ClearUrlRules.Provider provider) {
+                addError(data, provider);
+            }
 
-                // check exceptions
-                if (providerData.has("exceptions")) {
-                    JSONArray exceptions = providerData.getJSONArray("exceptions");
-                    for (int i = 0; i < exceptions.length(); i++) {
-                        String exception = exceptions.getString(i);
-                        if (matcher(exception, cleared).find()) {
-                            // exception matches, ignore provider
-                            if (verbose.get()) data.addInfo(R.string.mClear_exception, exception);
-                            continue whileProvider;
-                        }
-                    }
-                }
+            @Override
+            public void onMatch(ClearUrlRules.Provider provider) {
+                if (verbose.get()) data.addInfo(R.string.mClear_matches, provider.name);
+            }
 
-                // apply redirections
-                if (providerData.has("redirections")) {
-                    JSONArray redirections = providerData.getJSONArray("redirections");
-                    for (int i = 0; i < redirections.length(); i++) {
-                        String redirection = redirections.getString(i);
-                        Matcher matcher = Pattern.compile(redirection).matcher(cleared);
-                        if (matcher.find() && matcher.groupCount() >= 1) {
-                            // redirection found
-                            if (providerData.optBoolean("forceRedirection", false)) {
-                                // maybe do something special?
-                                data.addInfo(R.string.mClear_forcedRedirection);
-                            } else {
-                                data.addInfo(R.string.mClear_redirection);
-                            }
-                            if (verbose.get()) data.addDetails(redirection);
-                            cleared = decodeURIComponent(matcher.group(1)); // can't be null, checked in the if
-                            data.setColor(R.color.warning);
-                            continue whileProvider;
-                        }
-                    }
-                }
+            @Override
+            public void onBlocked(ClearUrlRules.Provider provider) {
+                // provider blocked
+                data.addInfo(R.string.mClear_blocked);
+                data.setColor(R.color.bad);
+            }
 
-                // apply rawRules
-                if (providerData.has("rawRules")) {
-                    JSONArray rawRules = providerData.getJSONArray("rawRules");
-                    for (int i = 0; i < rawRules.length(); i++) {
-                        String rawRule = rawRules.getString(i);
-                        Matcher matcher = matcher(rawRule, cleared);
-                        if (matcher.find()) {
-                            // rawrule matches, apply
-                            cleared = matcher.replaceAll("");
-                            data.addInfo(R.string.mClear_rawRule);
-                            if (verbose.get()) data.addDetails(rawRule);
-                            data.setColor(R.color.warning);
-                        }
-                    }
-                }
+            @Override
+            public void onException(ClearUrlRules.Provider provider, Pattern exception) {
+                if (verbose.get()) data.addInfo(R.string.mClear_exception, exception.pattern());
+            }
 
-                // apply rules
-                if (providerData.has("rules")) {
-                    JSONArray paths = providerData.getJSONArray("rules");
-                    for (int i = 0; i < paths.length(); i++) {
-                        String path = "([?&#])" + paths.getString(i) + "=[^&#]*";
-                        Matcher matcher = matcher(path, cleared);
-                        while (matcher.find()) {
-                            // rule applies
-                            cleared = matcher.replaceFirst("$1");
-                            matcher.reset(cleared);
-                            data.addInfo(R.string.mClear_rule);
-                            if (verbose.get()) data.addDetails(paths.getString(i));
-                            data.setColor(R.color.warning);
-                        }
-                    }
+            @Override
+            public void onRedirection(ClearUrlRules.Provider provider, Pattern redirection) {
+                if (provider.forceRedirection) {
+                    // maybe do something special?
+                    data.addInfo(R.string.mClear_forcedRedirection);
+                } else {
+                    data.addInfo(R.string.mClear_redirection);
                 }
+                if (verbose.get()) data.addDetails(redirection.pattern());
+                data.setColor(R.color.warning);
+            }
 
-                // apply referral rules
-                if (!allowReferral.get() && providerData.has("referralMarketing")) {
-                    JSONArray referrals = providerData.getJSONArray("referralMarketing");
-                    for (int i = 0; i < referrals.length(); i++) {
-                        String referral = "([?&#])" + referrals.getString(i) + "=[^&#]*";
-                        Matcher matcher = matcher(referral, cleared);
-                        while (matcher.find()) {
-                            // raw rule applies
-                            cleared = matcher.replaceFirst("$1");
-                            matcher.reset(cleared);
-                            data.addInfo(R.string.mClear_referral);
-                            if (verbose.get()) data.addDetails(referrals.getString(i));
-                            data.setColor(R.color.warning);
-                        }
-                    }
-                }
+            @Override
+            public void onRawRule(ClearUrlRules.Provider provider, Pattern rawRule) {
+                data.addInfo(R.string.mClear_rawRule);
+                if (verbose.get()) data.addDetails(rawRule.pattern());
+                data.setColor(R.color.warning);
+            }
 
-                // if changed, fix cleaning artifacts
-                if (!cleared.equals(urlData.url)) {
-
-                    // remove empty elements
-                    cleared = cleared
-                            .replaceAll("\\?&+", "?")
-                            .replaceAll("\\?#", "#")
-                            .replaceAll("\\?$", "")
-                            .replaceAll("&&+", "&")
-                            .replaceAll("&#", "#")
-                            .replaceAll("&$", "")
-                            .replaceAll("#&+", "#")
-                            .replaceAll("#$", "")
-                    ;
-
-                    // restore missing domain
-                    if (!cleared.matches("^https?://.*")) {
-                        cleared = "http://" + cleared;
-                    }
-                }
-            } catch (JSONException | UnsupportedEncodingException e) {
-                e.printStackTrace();
-                if (verbose.get()) {
-                    data.addInfo(R.string.mClear_error);
-                    data.addDetails(provider);
-                }
+            @Override
+            public void onRule(boolean referral, String rule) {
+                data.addInfo(referral ? R.string.mClear_referral : R.string.mClear_rule);
+                if (verbose.get()) data.addDetails(rule);
+                data.setColor(R.color.warning);
             }
-        }
+        });
 
         // url changed
         if (!cleared.equals(urlData.url)) {
             // apply automatically if required
             if (auto.get())
-                if (setNewUrl.apply(new UrlData(cleared).putData(CLEARED, CLEARED))) return;
+                if (setNewUrl.apply(new UrlData.Builder(cleared).putData(CLEARED, CLEARED).build())) return null;
 
             // enable button
             data.enabled = true;
@@ -305,10 +220,14 @@ class ClearUrlDialog extends AModuleDialog {
                 data.info += "\n\n -> " + cleared;
             }
         }
+        return new Result(cleared, data.enabled, data.info, data.color);
     }
 
     @Override
     public void onDisplayUrl(UrlData urlData) {
+        Result data = getAnalysis();
+        if (data == null) data = new Result(null, false, "", 0);
+
         // update button
         fix.setEnabled(data.enabled);
 
@@ -329,7 +248,13 @@ class ClearUrlDialog extends AModuleDialog {
     /* ------------------- internal ------------------- */
 
     /**
-     * Dataclass for transferring data
+     * The result of the analysis: the [cleared] url, if the button is [enabled], the [info] text and its [color]
+     */
+    private record Result(String cleared, boolean enabled, String info, int color) {
+    }
+
+    /**
+     * Dataclass for building the result
      */
     private class Data {
         public boolean enabled = false;
@@ -362,37 +287,21 @@ class ClearUrlDialog extends AModuleDialog {
     }
 
     /**
-     * Clear the url
-     */
-    private void clear() {
-        if (cleared != null) setUrl(new UrlData(cleared).putData(CLEARED, CLEARED));
-    }
-
-    // ------------------- utils -------------------
-
-    /**
-     * Hopefully the same as javascript's decodeURIComponent
-     * Idea from https://stackoverflow.com/a/6926987, but using own implementation
+     * Notifies that a provider couldn't be evaluated
      */
-    private static String decodeURIComponent(String text) throws UnsupportedEncodingException {
-        var result = new StringBuilder();
-        var parts = text.split("\\+");
-        for (var part : parts) {
-            if (result.length() != 0) result.append('+');
-            result.append(decode(part));
+    private void addError(Data data, ClearUrlRules.Provider provider) {
+        if (verbose.get()) {
+            data.addInfo(R.string.mClear_error);
+            data.addDetails(provider.name);
         }
-        return result.toString();
     }
 
     /**
-     * Matches case insensitive regex into an input
-     *
-     * @param regex regex to use
-     * @param input input to use
-     * @return the matcher object
+     * Clear the url
      */
-    private static Matcher matcher(String regex, String input) {
-        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(input);
+    private void clear() {
+        Result result = getAnalysis();
+        if (result != null && result.cleared != null) setUrl(new UrlData.Builder(result.cleared).putData(CLEARED, CLEARED).build());
     }
 
 }
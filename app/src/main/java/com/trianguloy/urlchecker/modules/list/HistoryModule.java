@@ -193,9 +193,10 @@ class HistoryDialog extends AModuleDialog {
         if (newIndex >= 0 && newIndex < history.size()) {
             index = newIndex;
             setUrl(
-                    new UrlData(history.get(newIndex))
+                    new UrlData.Builder(history.get(newIndex))
                             .disableUpdates()
                             .dontTriggerOwn()
+                            .build()
             );
         }
         updateUI();
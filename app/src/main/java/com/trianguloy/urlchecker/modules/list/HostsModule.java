@@ -1,7 +1,9 @@
 package com.trianguloy.urlchecker.modules.list;
 
 import android.graphics.Color;
+import android.util.Pair;
 import android.view.View;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -11,12 +13,13 @@ import com.trianguloy.urlchecker.dialogs.MainDialog;
 import com.trianguloy.urlchecker.modules.AModuleConfig;
 import com.trianguloy.urlchecker.modules.AModuleData;
 import com.trianguloy.urlchecker.modules.AModuleDialog;
+import com.trianguloy.urlchecker.modules.companions.CatalogUpdater;
 import com.trianguloy.urlchecker.modules.companions.Hosts;
 import com.trianguloy.urlchecker.url.UrlData;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
+import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Arrays;
 
 /**
  * This module checks for patterns characters in the url
@@ -59,6 +62,15 @@ class HostsConfig extends AModuleConfig {
 
     @Override
     public void onInitialize(View views) {
+        // periodic rebuild
+        Switch autoUpdate = views.findViewById(R.id.autoUpdate);
+        var autoUpdatePref = Hosts.AUTOUPDATE_PREF(getActivity());
+        autoUpdate.setChecked(autoUpdatePref.get());
+        autoUpdate.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            autoUpdatePref.set(isChecked);
+            CatalogUpdater.schedule(getActivity());
+        });
+
         // click to build
         views.findViewById(R.id.rebuild).setOnClickListener(v ->
                 hosts.build(false, () ->
@@ -93,10 +105,33 @@ class HostsDialog extends AModuleDialog {
     public void onInitialize(View views) {
         text = views.findViewById(R.id.text);
         text.setOnClickListener(v -> {
-            if (hosts.isUninitialized()) hosts.build(true, () -> onNewUrl(getUrl()));
+            if (hosts.isUninitialized()) hosts.build(true, () -> {
+                setAnalysis(analyze(getUrlData(), null));
+                display();
+            });
         });
     }
 
+    @Override
+    public boolean isPureAnalysis() {
+        return true;
+    }
+
+    @Override
+    public Object getAnalysisInput(UrlData urlData) {
+        // only the host (and the database) matters
+        var parts = urlData.getParts();
+        return Arrays.asList(parts.getScheme() == null, parts.getHost(), hosts.getVersion());
+    }
+
+    /** Looks up the host of [urlData] (from any thread) */
+    @Override
+    public Object analyze(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
+        var parts = urlData.getParts();
+        var parseError = parts.getScheme() == null;
+        return new Result(parseError, parseError || parts.getHost() == null ? null : hosts.contains(parts.getHost()));
+    }
+
     @Override
     public void onDisplayUrl(UrlData urlData) {
         if (hosts.isUninitialized()) {
@@ -106,24 +141,26 @@ class HostsDialog extends AModuleDialog {
             setVisibility(true);
             return;
         }
-        onNewUrl(urlData.url);
+        display();
+    }
+
+    /** The result of the analysis: if the url couldn't be parsed ([parseError]), and the [label] of its host (null if none) */
+    private record Result(boolean parseError, Pair<String, String> label) {
     }
 
-    private void onNewUrl(String url) {
+    /** Shows the result of the last analysis */
+    private void display() {
+        Result result = getAnalysis();
+        if (result == null) result = new Result(false, null);
+        var label = result.label;
 
-        // init
-        String host;
-        try {
-            host = new URL(url).getHost();
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+        if (result.parseError) {
             text.setText(R.string.mHosts_parseError);
             AndroidUtils.setRoundedColor(R.color.warning, text);
             setVisibility(true);
             return;
         }
 
-        var label = hosts.contains(host);
         if (label != null) {
             text.setText(label.first);
             try {
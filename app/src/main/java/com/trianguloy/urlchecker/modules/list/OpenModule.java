@@ -197,7 +197,7 @@ class OpenDialog extends AModuleDialog {
         }
 
         // sort
-        lastOpened.sort(intentApps, getUrl());
+        lastOpened.sort(intentApps, getUrlData());
 
         // set
         var label = intentApps.get(0).getLabel(getActivity());
@@ -233,7 +233,7 @@ class OpenDialog extends AModuleDialog {
         var chosen = intentApps.get(index);
 
         // update as preferred over the rest
-        lastOpened.prefer(chosen, intentApps, getUrl());
+        lastOpened.prefer(chosen, intentApps, getUrlData());
 
         // open
         var intent = new Intent(getActivity().getIntent());
@@ -1,7 +1,5 @@
 package com.trianguloy.urlchecker.modules.list;
 
-import static com.trianguloy.urlchecker.utilities.methods.UrlUtils.decode;
-
 import android.view.View;
 import android.widget.Button;
 import android.widget.LinearLayout;
@@ -20,14 +18,9 @@ import com.trianguloy.urlchecker.utilities.methods.Inflater;
 import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 import com.trianguloy.urlchecker.utilities.wrappers.RegexFix;
 
-import org.json.JSONArray;
-
-import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
-import java.util.regex.Pattern;
 
 /**
  * This module checks for patterns characters in the url
@@ -91,8 +84,6 @@ class PatternDialog extends AModuleDialog {
     private final PatternCatalog catalog;
     private final RegexFix regexFix;
 
-    private final List<Message> messages = new ArrayList<>();
-
     public PatternDialog(MainDialog dialog) {
         super(dialog);
         catalog = new PatternCatalog(dialog);
@@ -111,84 +102,43 @@ class PatternDialog extends AModuleDialog {
     }
 
     @Override
-    public void onModifyUrl(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
+    public boolean isPureAnalysis() {
+        return true;
+    }
+
+    @Override
+    public Object analyze(UrlData urlData, JavaUtils.Function<UrlData, Boolean> setNewUrl) {
         // init
-        messages.clear();
+        var messages = new ArrayList<Message>();
 
         // check each pattern
-        var patterns = catalog.getCatalog();
+        var snapshot = catalog.getSnapshot();
+        var patterns = snapshot.catalog;
         for (var pattern : JavaUtils.toList(patterns.keys())) {
-            var url = urlData.url;
             try {
                 var data = patterns.optJSONObject(pattern);
-                var message = new Message(pattern);
-
-                // enabled?
                 if (data == null) continue;
-                if (!data.optBoolean("enabled", true)) continue;
 
-                // get regex (must exists)
-                if (!data.has("regex")) continue;
-
-                // encode if required
-                if (data.optBoolean("encode")) {
-                    url = URLEncoder.encode(url);
-                }
+                var newUrl = PatternCatalog.match(snapshot, data, urlData.url, regexFix);
+                if (newUrl == null) continue;
 
-                // check matches
-                // if 'regex' matches, the pattern can match
-                // if 'regex' doesn't match, the patter doesn't match
-                var regex_matcher = Pattern.compile(data.getString("regex")).matcher(url);
-                var matches = regex_matcher.find();
-                if (matches && data.has("excludeRegex")) {
-                    // if 'excludeRegex' doesn't exist, the pattern can match
-                    // if 'excludeRegex' matches, the pattern doesn't matches
-                    // if 'excludeRegex' doesn't match, the pattern can match
-                    matches = !Pattern.compile(data.getString("excludeRegex")).matcher(url).find();
-                }
-                if (matches) {
-                    message.matches = true;
-
-                    // check replacements
-                    String replacement = null;
-
-                    var replacements = data.opt("replacement");
-                    if (replacements != null) {
-                        // data exists
-                        if (replacements instanceof JSONArray replacementsArray) {
-                            // array, get random
-                            replacement = replacementsArray.getString(new Random().nextInt(replacementsArray.length()));
-                        } else {
-                            // single data, get that one
-                            replacement = replacements.toString();
-                        }
-                    }
-
-                    if (replacement != null) {
-                        // replace url
-                        message.newUrl = regexFix.replaceAll(url, regex_matcher, replacement);
-
-                        // decode if required
-                        if (data.optBoolean("decode")) {
-                            message.newUrl = decode(message.newUrl);
-                        }
-
-                        // automatic? apply
-                        if (data.optBoolean("automatic")) {
-                            if (setNewUrl.apply(new UrlData(message.newUrl).putData(APPLIED + pattern, pattern))) return;
-                        }
+                var hasReplacement = PatternCatalog.hasReplacement(data);
+                if (hasReplacement) {
+                    // automatic? apply
+                    if (PatternCatalog.isAutomatic(data)) {
+                        if (setNewUrl.apply(new UrlData.Builder(newUrl).putData(APPLIED + pattern, pattern).build())) return null;
                     }
                 }
 
-
                 // add
-                if (message.matches) messages.add(message);
+                messages.add(new Message(pattern, true, hasReplacement ? newUrl : null));
 
             } catch (Exception e) {
                 // invalid pattern? ignore
                 e.printStackTrace();
             }
         }
+        return Collections.unmodifiableList(messages);
     }
 
     @Override
@@ -198,8 +148,10 @@ class PatternDialog extends AModuleDialog {
 
         // add applied + matching
         for (var entry : urlData.getDataByPrefix(APPLIED)) {
-            addMessage(true, new Message(entry));
+            addMessage(true, new Message(entry, false, null));
         }
+        List<Message> messages = getAnalysis();
+        if (messages == null) messages = List.of();
         for (var message : messages) {
             addMessage(false, message);
         }
@@ -230,19 +182,12 @@ class PatternDialog extends AModuleDialog {
         Button fix = row.findViewById(R.id.button);
         fix.setText(R.string.mPttrn_fix);
         fix.setEnabled(message.newUrl != null);
-        if (message.newUrl != null) fix.setOnClickListener(v -> setUrl(new UrlData(message.newUrl).putData(APPLIED + message.pattern, message.pattern)));
+        if (message.newUrl != null) fix.setOnClickListener(v -> setUrl(new UrlData.Builder(message.newUrl).putData(APPLIED + message.pattern, message.pattern).build()));
     }
 
     /**
      * DataClass for pattern messages
      */
-    private static class Message {
-        final String pattern;
-        public boolean matches = false;
-        String newUrl = null;
-
-        public Message(String pattern) {
-            this.pattern = pattern;
-        }
+    private record Message(String pattern, boolean matches, String newUrl) {
     }
 }
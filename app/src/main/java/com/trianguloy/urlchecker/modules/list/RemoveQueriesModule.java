@@ -18,10 +18,6 @@ import com.trianguloy.urlchecker.url.UrlData;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
 import com.trianguloy.urlchecker.utilities.methods.Inflater;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 /**
  * This module removes queries "?foo=bar" from an url
  * Originally made by PabloOQ
@@ -83,7 +79,7 @@ class RemoveQueriesDialog extends AModuleDialog {
         });
 
         // remove all queries
-        remove.setOnClickListener(v -> setUrl(new UrlParts(getUrl()).getUrlWithoutQueries()));
+        remove.setOnClickListener(v -> setUrl(getUrlData().getParts().getUrlWithoutQuery()));
     }
 
     @Override
@@ -92,29 +88,30 @@ class RemoveQueriesDialog extends AModuleDialog {
         box.removeAllViews();
 
         // parse
-        UrlParts parts = new UrlParts(urlData.url);
+        var parts = urlData.getParts();
+        var parameters = parts.getParameters();
 
-        if (parts.queriesSize() == 0) {
+        if (parameters.size() == 0) {
             // no queries present, nothing to notify
             info.setText(R.string.mRemove_noQueries);
             remove.setEnabled(false); // disable the remove button
             setVisibility(false);
         } else {
             // queries present, notify
-            info.setText(parts.queriesSize() == 1
+            info.setText(parameters.size() == 1
                     ? getActivity().getString(R.string.mRemove_found1) // 1 query
-                    : getActivity().getString(R.string.mRemove_found, parts.queriesSize()) // 2+ queries
+                    : getActivity().getString(R.string.mRemove_found, parameters.size()) // 2+ queries
             );
             AndroidUtils.setAsClickable(info);
             remove.setEnabled(true); // enable the remove all button
             setVisibility(true);
 
             // for each query, create a button
-            for (int i = 0; i < parts.queriesSize(); i++) {
+            for (int i = 0; i < parameters.size(); i++) {
                 var button_text = Inflater.inflate(R.layout.button_text, box);
 
                 // button that removes the query
-                var queryName = parts.getQueryName(i);
+                var queryName = parameters.get(i).getName();
                 var button = button_text.<Button>findViewById(R.id.button);
                 button.setText(queryName.isEmpty()
                         // if no name
@@ -123,10 +120,10 @@ class RemoveQueriesDialog extends AModuleDialog {
                         : getActivity().getString(R.string.mRemove_one, queryName)
                 );
                 var finalI = i;
-                button.setOnClickListener(v -> setUrl(parts.getUrlWithoutQuery(finalI)));
+                button.setOnClickListener(v -> setUrl(parts.getUrlWithoutParameter(finalI)));
 
                 // text that displays the query value and sets it
-                var queryValue = parts.getQueryValue(i);
+                var queryValue = parameters.get(i).getValue() == null ? "" : decode(parameters.get(i).getValue());
                 var text = button_text.<TextView>findViewById(R.id.text);
                 text.setText(queryValue);
                 AndroidUtils.setAsClickable(text);
@@ -148,104 +145,4 @@ class RemoveQueriesDialog extends AModuleDialog {
                         : R.drawable.arrow_right,
                 0, 0, 0);
     }
-
-    /**
-     * Manages the splitting, removing and merging of queries
-     */
-    private static class UrlParts {
-        private final String preQuery; // "http://google.com"
-        private final List<String> queries = new ArrayList<>(); // ["ref=foo","bar"]
-        private final String postQuery; // "#start"
-
-        /**
-         * Prepares a url and extracts its queries
-         */
-        public UrlParts(String url) {
-            // an uri is defined as [scheme:][//authority][path][?query][#fragment]
-            // we need to find a '?' followed by anything except a '#'
-            // this allows us to work with any string, even with non-standard or malformed uris
-            int iStart = url.indexOf("?"); // position of '?' (-1 if not present)
-            int iEnd = url.indexOf("#", iStart + 1);
-            iEnd = iEnd == -1 ? url.length() : iEnd; // position of '#' (end of string if not present)
-
-            // add part until '?' or until postQuery if not present
-            preQuery = url.substring(0, iStart != -1 ? iStart : iEnd);
-            // add queries if any
-            if (iStart != -1) {
-                queries.addAll(splitFix(url.substring(iStart + 1, iEnd), "&"));
-            }
-            // add part after queries (empty if not present)
-            postQuery = url.substring(iEnd);
-        }
-
-        /**
-         * returns the number of queries present
-         */
-        public int queriesSize() {
-            return queries.size();
-        }
-
-        /**
-         * Returns the name of a query (by index)
-         */
-        public String getQueryName(int index) {
-            return splitFix(queries.get(index),"=").get(0);
-        }
-
-        /**
-         * Returns the decoded value of a query (by index)
-         */
-        public String getQueryValue(int index) {
-            var split = splitFix(queries.get(index),"=");
-            if (split.size() <= 1) return "";
-            return decode(split.get(1));
-        }
-
-        /**
-         * Returns the full url
-         */
-        public String getUrl() {
-            return getUrlWithoutQuery(-1);
-        }
-
-        /**
-         * Returns the url without one query (by index)
-         */
-        public String getUrlWithoutQuery(int index) {
-            var sb = new StringBuilder();
-
-            // concatenate queries
-            for (int i = 0; i < queries.size(); ++i)
-                // excluding the required one
-                if (i != index)
-                    // first after '?', the rest after '&'
-                    sb.append(sb.length() == 0 ? "?" : "&").append(queries.get(i));
-
-            // finish building
-            sb.insert(0, preQuery);
-            sb.append(postQuery);
-            return sb.toString();
-        }
-
-        /**
-         * Returns the url without queries
-         */
-        public String getUrlWithoutQueries() {
-            return preQuery + postQuery;
-        }
-    }
-
-    /**
-     * {@link String#split(String)} won't return the last element if it's empty.
-     * This function does. And it returns a list instead of an array.
-     * Everything else is the same.
-     * Note: regex must not match '#', it does change this function
-     */
-    private static List<String> splitFix(String string, String regex) {
-        // split with an extra char
-        String[] parts = (string + "#").split(regex);
-        // remove the extra char
-        parts[parts.length - 1] = parts[parts.length - 1].substring(0, parts[parts.length - 1].length() - 1);
-        return Arrays.asList(parts);
-    }
 }
@@ -16,14 +16,13 @@ import com.trianguloy.urlchecker.modules.AModuleConfig;
 import com.trianguloy.urlchecker.modules.AModuleData;
 import com.trianguloy.urlchecker.modules.AModuleDialog;
 import com.trianguloy.urlchecker.modules.AutomationRules;
+import com.trianguloy.urlchecker.modules.companions.RedirectResolver;
 import com.trianguloy.urlchecker.url.UrlData;
 import com.trianguloy.urlchecker.utilities.generics.GenericPref;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
-import com.trianguloy.urlchecker.utilities.methods.HttpUtils;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -84,7 +83,7 @@ class StatusDialog extends AModuleDialog {
 
     static List<AutomationRules.Automation<StatusDialog>> AUTOMATIONS = List.of(
             new AutomationRules.Automation<>("checkStatus", R.string.auto_checkStatus, dialog ->
-                    dialog.check(dialog.getUrlData().disableUpdates))
+                    dialog.check(dialog.getUrlData().disableUpdates, true))
     );
 
     private Button check;
@@ -96,8 +95,11 @@ class StatusDialog extends AModuleDialog {
 
     private GenericPref.Bool autoRedir;
 
+    private final RedirectResolver resolver;
+
     public StatusDialog(MainDialog dialog) {
         super(dialog);
+        resolver = new RedirectResolver(dialog);
     }
 
     @Override
@@ -110,7 +112,8 @@ class StatusDialog extends AModuleDialog {
         check = views.findViewById(R.id.check);
         check.setOnClickListener(v -> {
             AndroidUtils.setHideableText(previous, null);
-            check(false);
+            // explicit check, not cached
+            check(false, false);
         });
 
         previous = views.findViewById(R.id.previous);
@@ -144,9 +147,9 @@ class StatusDialog extends AModuleDialog {
     }
 
     /**
-     * Starts the checking process
+     * Starts the checking process (with cached results if [useCache])
      */
-    private void check(boolean disableUpdates) {
+    private void check(boolean disableUpdates, boolean useCache) {
         // disable button
         check.setEnabled(false);
         check.setText(R.string.mStatus_recheck);
@@ -154,52 +157,38 @@ class StatusDialog extends AModuleDialog {
         updateRedirect(null);
 
         // check in background
-        thread = new Thread(() -> _check(disableUpdates));
+        thread = new Thread(() -> _check(disableUpdates, useCache));
         thread.start();
     }
 
     /**
-     * Checks a redirect, in background
-     * https://stackoverflow.com/questions/1884230/urlconnection-doesnt-follow-redirect
+     * Checks a redirect, in background.
+     * With auto redirection the whole chain is followed at once, and the final url is set directly.
      */
-    private void _check(boolean disableUpdates) {
+    private void _check(boolean disableUpdates, boolean useCache) {
         // get url
         var url = getUrl();
         Log.d("STATUS", "Checking: " + url);
+        var autoRedirect = !disableUpdates && autoRedir.get();
         String message;
 
         var redirectionUrl = (String) null;
+        var redirections = new ArrayList<String>();
 
-        HttpURLConnection conn = null;
         try {
-            // perform GET to the url
-            conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setInstanceFollowRedirects(false);   // Make the logic below easier to detect redirections
-            conn.setConnectTimeout(HttpUtils.CONNECT_TIMEOUT);
-            var responseCode = conn.getResponseCode();
-            Log.d("RESPONSE_CODE", url + ": " + responseCode);
-
-            // prepare message
-            message = null;
-            var codesArray = getActivity().getResources().getStringArray(R.array.mStatus_codes);
-            for (var s : codesArray) {
-                if (s.startsWith(String.valueOf(responseCode))) {
-                    // known status code
-                    message = s;
-                    break;
-                }
-            }
-            if (message == null) {
-                // unknown status code
-                message = getActivity().getString(R.string.mStatus_unknownCode, responseCode);
-            }
+            var chain = resolver.resolve(url, autoRedirect ? RedirectResolver.MAX_HOPS : 1, useCache);
+            var first = chain.hops().get(0);
+            Log.d("RESPONSE_CODE", url + ": " + first.code());
+
+            message = getMessage(first.code());
+            redirectionUrl = first.location();
 
-            // redirection
-            var location = conn.getHeaderField("Location");
-            if (location != null) {
-                // this should be removed, the uri needs to be kept encoded
-                // location = URLDecoder.decode(location, "UTF-8");
-                redirectionUrl = new URL(new URL(url), location).toExternalForm(); // Deal with relative URLs
+            if (autoRedirect && redirectionUrl != null && !chain.loop()) {
+                // all the redirections, until the final url
+                for (var hop : chain.hops()) {
+                    if (hop.location() != null) redirections.add("--> " + getMessage(hop.code()));
+                }
+                redirectionUrl = chain.getFinalUrl();
             }
         } catch (IOException e) {
             // io error
@@ -209,10 +198,6 @@ class StatusDialog extends AModuleDialog {
             // other error
             e.printStackTrace();
             message = getActivity().getString(R.string.mStatus_error, e.getMessage());
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
         }
 
         // exit if was canceled
@@ -228,10 +213,10 @@ class StatusDialog extends AModuleDialog {
             info.setText(finalMessage);
             check.setEnabled(true);
 
-            if (!disableUpdates && autoRedir.get() && finalRedirectionUrl != null) {
+            if (!redirections.isEmpty()) {
                 // autoredirect, replace url
-                var previousMessage = previous.getText().toString() + (previous.length() == 0 ? "" : "\n") + "--> " + finalMessage;
-                setUrl(new UrlData(finalRedirectionUrl).putData(PREVIOUS, previousMessage));
+                var previousMessage = previous.getText().toString() + (previous.length() == 0 ? "" : "\n") + String.join("\n", redirections);
+                setUrl(new UrlData.Builder(finalRedirectionUrl).putData(PREVIOUS, previousMessage).build());
             } else {
                 updateRedirect(finalRedirectionUrl);
             }
@@ -239,6 +224,18 @@ class StatusDialog extends AModuleDialog {
         });
     }
 
+    /** Returns the message of a response [code] */
+    private String getMessage(int code) {
+        for (var s : getActivity().getResources().getStringArray(R.array.mStatus_codes)) {
+            if (s.startsWith(String.valueOf(code))) {
+                // known status code
+                return s;
+            }
+        }
+        // unknown status code
+        return getActivity().getString(R.string.mStatus_unknownCode, code);
+    }
+
     /** Updates the redirect textview */
     private void updateRedirect(String redirectionUrl) {
         if (redirectionUrl == null) {
@@ -16,21 +16,16 @@ import com.trianguloy.urlchecker.modules.AModuleData;
 import com.trianguloy.urlchecker.modules.AModuleDialog;
 import com.trianguloy.urlchecker.modules.AutomationRules;
 import com.trianguloy.urlchecker.modules.DescriptionConfig;
+import com.trianguloy.urlchecker.modules.companions.Unshortener;
 import com.trianguloy.urlchecker.url.UrlData;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
-import com.trianguloy.urlchecker.utilities.methods.HttpUtils;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 
 /**
- * Module to Unshort links by using https://unshorten.me/
- * Consider adding other services, or even allow custom
- * TODO: the redirect logic here and in the Status check module is very similar, consider extracting a common wrapper
+ * Module to Unshort links, by following their redirections locally
  */
 public class UnshortenModule extends AModuleData {
 
@@ -72,8 +67,11 @@ class UnshortenDialog extends AModuleDialog {
 
     private Thread thread = null;
 
+    private final Unshortener unshortener;
+
     public UnshortenDialog(MainDialog dialog) {
         super(dialog);
+        unshortener = new Unshortener(dialog);
     }
 
     @Override
@@ -122,24 +120,8 @@ class UnshortenDialog extends AModuleDialog {
     private void _check(boolean disableUpdates) {
 
         try {
-            // get response
-            var response = new JSONObject(HttpUtils.readFromUrl("https://unshorten.me/json/" + getUrl()));
-            var resolved_url = response.getString("resolved_url");
-            var usage_count = Integer.parseInt(response.optString("usage_count", "0"));
-            var ref = new Object() { // reference object to allow using these inside lambdas
-                int usage_limit = 10; // documented but hardcoded
-                int remaining_calls = usage_limit - usage_count;
-            };
-            var error = response.optString("error", "(no reported error)");
-            var success = response.getBoolean("success");
-
-            // remaining_calls is not documented, but if it's present use it and replace the hardcoded usage_limit
-            try {
-                ref.remaining_calls = Integer.parseInt(response.optString("remaining_calls", ""));
-                ref.usage_limit = usage_count + ref.remaining_calls;
-            } catch (NumberFormatException ignore) {
-                // not present, ignore
-            }
+            // follow the redirections
+            var resolved_url = unshortener.unshort(getUrl());
 
             // exit if was canceled
             if (Thread.currentThread().isInterrupted()) {
@@ -147,20 +129,10 @@ class UnshortenDialog extends AModuleDialog {
                 return;
             }
 
-            if (!success) {
-                // server error, maybe too many checks
-                getActivity().runOnUiThread(() -> {
-                    info.setText(getActivity().getString(R.string.mUnshort_error, error));
-                    AndroidUtils.setRoundedColor(R.color.warning, info);
-                    // allow retries
-                    unshort.setEnabled(true);
-                });
-            } else if (Objects.equals(resolved_url, getUrl())) {
+            if (Objects.equals(resolved_url, getUrl())) {
                 // same, nothing to replace
                 getActivity().runOnUiThread(() -> {
                     info.setText(getActivity().getString(R.string.mUnshort_notFound));
-                    if (ref.remaining_calls <= ref.usage_limit / 2)
-                        info.append(" (" + getActivity().getString(R.string.mUnshort_pending, ref.remaining_calls, ref.usage_limit) + ")");
                     AndroidUtils.clearRoundedColor(info);
                 });
             } else {
@@ -175,16 +147,12 @@ class UnshortenDialog extends AModuleDialog {
                         info.setText(AndroidUtils.underlineUrl(getActivity().getString(R.string.mUnshort_to, MARKER), resolved_url, this::unshortTo));
                     }
 
-                    if (ref.remaining_calls <= ref.usage_limit / 2)
-                        info.append(" (" + getActivity().getString(R.string.mUnshort_pending, ref.remaining_calls, ref.usage_limit) + ")"
-                        );
-
                     // a short url can be unshorted to another short url
                     unshort.setEnabled(true);
                 });
             }
 
-        } catch (IOException | JSONException e) {
+        } catch (IOException e) {
             // internal error
             e.printStackTrace();
 
@@ -205,7 +173,7 @@ class UnshortenDialog extends AModuleDialog {
 
     /** Unshorts to another url */
     private void unshortTo(String url) {
-        setUrl(new UrlData(url).dontTriggerOwn());
+        setUrl(new UrlData.Builder(url).dontTriggerOwn().build());
         info.setText(getActivity().getString(R.string.mUnshort_ok));
         AndroidUtils.setRoundedColor(R.color.good, info);
     }
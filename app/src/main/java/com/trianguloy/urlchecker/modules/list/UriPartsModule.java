@@ -1,7 +1,6 @@
 package com.trianguloy.urlchecker.modules.list;
 
 import android.net.Uri;
-import android.net.UrlQuerySanitizer;
 import android.view.View;
 import android.widget.Button;
 import android.widget.LinearLayout;
@@ -15,6 +14,7 @@ import com.trianguloy.urlchecker.modules.AModuleData;
 import com.trianguloy.urlchecker.modules.AModuleDialog;
 import com.trianguloy.urlchecker.modules.DescriptionConfig;
 import com.trianguloy.urlchecker.url.UrlData;
+import com.trianguloy.urlchecker.url.UrlParts;
 import com.trianguloy.urlchecker.utilities.methods.AndroidUtils;
 import com.trianguloy.urlchecker.utilities.methods.Inflater;
 import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
@@ -74,14 +74,12 @@ class UriPartsDialog extends AModuleDialog {
 
         // parse
         var uri = Uri.parse(urlData.url);
-        var urlQuerySanitizer = new UrlQuerySanitizer();
-        // the default parseUrl doesn't remove the fragment
+        var parameters = new ArrayList<UrlParts.Parameter>();
+        // only a standard query: opaque uris (mailto:...) and hash-routed ones ('#/page?a=b') have none here
         if (uri.getEncodedQuery() != null) {
-            urlQuerySanitizer.setAllowUnregisteredParamaters(true);
-            urlQuerySanitizer.setUnregisteredParameterValueSanitizer(v -> v);
-            urlQuerySanitizer.parseQuery(uri.getEncodedQuery()
-                    // this will fix issues with the parser decoding twice
-                    .replace("%", "%25"));
+            for (var parameter : urlData.getParts().getParameters()) {
+                if (!parameter.isEmpty()) parameters.add(parameter);
+            }
         }
 
         // domain elements
@@ -113,18 +111,17 @@ class UriPartsDialog extends AModuleDialog {
         }
 
         // query parameters
-        var parameters = urlQuerySanitizer.getParameterList();
         if (!parameters.isEmpty()) {
             var queries = addGroup("Parameters", parameters.size(), uri.buildUpon().query(null));
             for (var i = 0; i < parameters.size(); i++) {
                 int removeI = i;
                 // append the parameter
-                addPart(UrlUtils.decode(parameters.get(i).mParameter), UrlUtils.decode(parameters.get(i).mValue), queries, () -> {
+                addPart(getName(parameters.get(i)), getValue(parameters.get(i)), queries, () -> {
                     // generate same url but without this parameter
                     var builder = uri.buildUpon();
                     builder.query(null);
                     for (var newI = 0; newI < parameters.size(); newI++) {
-                        if (newI != removeI) builder.appendQueryParameter(UrlUtils.decode(parameters.get(newI).mParameter), UrlUtils.decode(parameters.get(newI).mValue));
+                        if (newI != removeI) builder.appendQueryParameter(getName(parameters.get(newI)), getValue(parameters.get(newI)));
                     }
                     return builder.build().toString();
                 });
@@ -140,6 +137,17 @@ class UriPartsDialog extends AModuleDialog {
         setVisibility(box.getChildCount() > 0);
     }
 
+    /** Returns the decoded name of a [parameter] */
+    private static String getName(UrlParts.Parameter parameter) {
+        return UrlUtils.decode(parameter.getName());
+    }
+
+    /** Returns the decoded value of a [parameter], empty if none */
+    private static String getValue(UrlParts.Parameter parameter) {
+        var value = parameter.getValue();
+        return value == null ? "" : UrlUtils.decode(value);
+    }
+
     /** Adds a collapsible group */
     private LinearLayout addGroup(String name, int size, Uri.Builder onDelete) {
         var title = Inflater.inflate(R.layout.uri_part, box);
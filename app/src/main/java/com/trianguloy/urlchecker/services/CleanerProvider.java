@@ -0,0 +1,129 @@
+package com.trianguloy.urlchecker.services;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.trianguloy.urlchecker.modules.companions.UrlCleaner;
+import com.trianguloy.urlchecker.utilities.generics.GenericPref;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Cleans urls for other apps, without opening any activity (see {@link UrlCleaner}).
+ * There is no content, only {@link #call}:
+ * <pre>
+ * var extras = new Bundle();
+ * extras.putStringArray("urls", new String[]{"https://example.com/?utm_source=x", ...});
+ * var result = getContentResolver().call(Uri.parse("content://com.trianguloy.urlchecker.cleaner"), "clean", null, extras);
+ * for (Bundle entry : result.getParcelableArrayList("results")) entry.getString("cleaned") ...
+ * </pre>
+ * A single url can also be sent as the 'arg'. Results are returned in the same order.
+ * Callers need the 'permission.CLEAN' permission, and the user must enable it in the settings (disabled by default).
+ * At most {@link #MAX_URLS} urls per call, the whole result must fit in a single binder transaction.
+ */
+public class CleanerProvider extends ContentProvider {
+
+    public static GenericPref.Bool ENABLED_PREF(Context cntx) {
+        return new GenericPref.Bool("cleanerProvider_enabled", false, cntx);
+    }
+
+    /** Max number of urls per call */
+    public static final int MAX_URLS = 1000;
+
+    public static final String METHOD_CLEAN = "clean";
+    /** String array (or list) of urls to clean */
+    public static final String EXTRA_URLS = "urls";
+    /** List of bundles, one per url */
+    public static final String EXTRA_RESULTS = "results";
+
+    /* result keys */
+    public static final String RESULT_URL = "url";
+    public static final String RESULT_CLEANED = "cleaned";
+    public static final String RESULT_CHANGED = "changed";
+    public static final String RESULT_APPLIED = "applied";
+    public static final String RESULT_BLOCKED = "blocked";
+    public static final String RESULT_QUERIES = "queries";
+    public static final String RESULT_LABEL = "label";
+    public static final String RESULT_LABEL_COLOR = "labelColor";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!METHOD_CLEAN.equals(method)) return super.call(method, arg, extras);
+        if (!ENABLED_PREF(getContext()).get()) throw new SecurityException("Disabled in the settings");
+
+        // urls
+        var urls = new ArrayList<String>();
+        if (arg != null) urls.add(arg);
+        if (extras != null) {
+            var array = extras.getStringArray(EXTRA_URLS);
+            if (array != null) Collections.addAll(urls, array);
+            var list = extras.getStringArrayList(EXTRA_URLS);
+            if (list != null) urls.addAll(list);
+        }
+        if (urls.size() > MAX_URLS) throw new IllegalArgumentException("Too many urls: " + urls.size() + " (max " + MAX_URLS + ")");
+
+        // clean (rules and settings are loaded once per call)
+        var cleaner = new UrlCleaner(getContext());
+        var results = new ArrayList<Bundle>(urls.size());
+        for (var url : urls) {
+            results.add(url == null ? new Bundle() : toBundle(cleaner.clean(url, false)));
+        }
+
+        var bundle = new Bundle();
+        bundle.putParcelableArrayList(EXTRA_RESULTS, results);
+        return bundle;
+    }
+
+    /** Converts a [result] to its bundle representation */
+    private static Bundle toBundle(UrlCleaner.Result result) {
+        var bundle = new Bundle();
+        bundle.putString(RESULT_URL, result.url());
+        bundle.putString(RESULT_CLEANED, result.cleaned());
+        bundle.putBoolean(RESULT_CHANGED, result.isChanged());
+        bundle.putStringArray(RESULT_APPLIED, result.applied().toArray(new String[0]));
+        bundle.putBoolean(RESULT_BLOCKED, result.blocked());
+        bundle.putInt(RESULT_QUERIES, result.queries());
+        if (result.label() != null) {
+            bundle.putString(RESULT_LABEL, result.label().first);
+            bundle.putString(RESULT_LABEL_COLOR, result.label().second);
+        }
+        return bundle;
+    }
+
+    /* ------------------- no content ------------------- */
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
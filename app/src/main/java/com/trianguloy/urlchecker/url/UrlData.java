@@ -5,20 +5,36 @@ import com.trianguloy.urlchecker.modules.AModuleDialog;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Manages an url and extra data associated with it
- * I don't like this approach, but unfortunately I can't think of something better
- * TODO: make this immutable with a builder/factory or something
+ * Manages an url and extra data associated with it.
+ * Immutable (create it with {@link Builder}), so it can be shared freely, even with other threads.
  */
-public class UrlData {
+public final class UrlData {
 
     // ------------------- url -------------------
 
     public final String url;
 
     public UrlData(String url) {
+        this(url, null, true, false, null);
+    }
+
+    private UrlData(String url, AModuleDialog trigger, boolean triggerOwn, boolean disableUpdates, ExtraData extraData) {
         this.url = url == null ? "" : url;
+        this.trigger = trigger;
+        this.triggerOwn = triggerOwn;
+        this.disableUpdates = disableUpdates;
+        this.extraData = extraData;
+    }
+
+    private volatile UrlParts parts;
+
+    /** The parsed url, shared by all modules (parsed when first needed) */
+    public UrlParts getParts() {
+        if (parts == null) parts = new UrlParts(url);
+        return parts;
     }
 
     // ------------------- optional data -------------------
@@ -26,65 +42,75 @@ public class UrlData {
     /**
      * The module that triggered this data (null if internal)
      */
-    public AModuleDialog trigger;
+    public final AModuleDialog trigger;
 
     /**
      * If set, the module that triggers the update will be notified (all callbacks)
      */
-    public boolean triggerOwn = true;
-
-    public UrlData dontTriggerOwn() {
-        triggerOwn = false;
-        return this;
-    }
+    public final boolean triggerOwn;
 
     /**
      * If set, the url will not be changed (future setUrl calls will be ignored)
      */
-    public boolean disableUpdates = false;
-
-    public UrlData disableUpdates() {
-        disableUpdates = true;
-        return this;
-    }
+    public final boolean disableUpdates;
 
     // ------------------- extra data -------------------
 
-    private final LinkedHashMap<String, String> extraData = new LinkedHashMap<>(); // keeps order
-
     /**
-     * saves a key-value data, will be kept with automatic updates (but not with manual ones)
+     * The extra data of an update, on top of the extra data of the previous ones (null if none).
+     * Never modified, so merging just adds a new layer that shares all the previous ones.
      */
-    public UrlData putData(String key, String value) {
-        extraData.put(key, value);
-        return this;
+    private record ExtraData(ExtraData previous, String[] entries) {
     }
 
+    private final ExtraData extraData;
+
     /**
      * gets a key-value data, those set on this update or previous automatic ones
      */
     public String getData(String key) {
-        return extraData.get(key);
+        // the latest value
+        for (var layer = extraData; layer != null; layer = layer.previous) {
+            for (int i = layer.entries.length - 2; i >= 0; i -= 2) {
+                if (layer.entries[i].equals(key)) return layer.entries[i + 1];
+            }
+        }
+        return null;
     }
 
     /** Returns all entries with a given prefix, in insertion order */
     public List<String> getDataByPrefix(String prefix) {
         var entries = new ArrayList<String>();
-        for (var entry : extraData.entrySet()) {
+        for (var entry : getAllData().entrySet()) {
             if (entry.getKey().startsWith(prefix)) entries.add(entry.getValue());
         }
         return entries;
     }
 
     /**
-     * adds all data from the parameter into this object. Keeps insertion order [...urlData.extraData,...this.extraData]
+     * returns a copy of this object with all data from the [previous] one, that will be kept with automatic updates.
+     * Keeps insertion order [...previous.extraData,...this.extraData]
      */
-    public void mergeData(UrlData urlData) {
-        // there is no putAllFirst
-        var thisExtraData = new LinkedHashMap<>(extraData);
-        extraData.clear();
-        extraData.putAll(urlData.extraData);
-        extraData.putAll(thisExtraData);
+    public UrlData merge(UrlData previous) {
+        // only the layers of this one need to be copied
+        var merged = previous.extraData;
+        var layers = new ArrayList<String[]>();
+        for (var layer = extraData; layer != null; layer = layer.previous) layers.add(layer.entries);
+        for (int i = layers.size() - 1; i >= 0; i--) merged = new ExtraData(merged, layers.get(i));
+        return new UrlData(url, trigger, triggerOwn, disableUpdates, merged);
+    }
+
+    /** Returns all the extra data, in insertion order (keys set again keep their first position, with the latest value) */
+    private Map<String, String> getAllData() {
+        var layers = new ArrayList<String[]>();
+        for (var layer = extraData; layer != null; layer = layer.previous) layers.add(layer.entries);
+
+        var data = new LinkedHashMap<String, String>();
+        for (int l = layers.size() - 1; l >= 0; l--) {
+            var entries = layers.get(l);
+            for (int i = 0; i < entries.length; i += 2) data.put(entries[i], entries[i + 1]);
+        }
+        return data;
     }
 
     @Override
@@ -93,7 +119,71 @@ public class UrlData {
                 ", trigger=" + trigger +
                 ", triggerOwn=" + triggerOwn +
                 ", disableUpdates=" + disableUpdates +
-                ", extraData=" + extraData +
+                ", extraData=" + getAllData() +
                 '}';
     }
+
+    // ------------------- builder -------------------
+
+    /**
+     * Usage:
+     * <pre>
+     *     new UrlData.Builder(url).disableUpdates().putData(key, value).build()
+     * </pre>
+     */
+    public static class Builder {
+        private final String url;
+        private AModuleDialog trigger = null;
+        private boolean triggerOwn = true;
+        private boolean disableUpdates = false;
+        private final ExtraData extraData;
+        private final List<String> entries = new ArrayList<>();
+
+        /** A new url */
+        public Builder(String url) {
+            this.url = url;
+            this.extraData = null;
+        }
+
+        /** A copy of [urlData] (sharing its extra data) */
+        public Builder(UrlData urlData) {
+            url = urlData.url;
+            trigger = urlData.trigger;
+            triggerOwn = urlData.triggerOwn;
+            disableUpdates = urlData.disableUpdates;
+            extraData = urlData.extraData;
+        }
+
+        /** @see UrlData#trigger */
+        public Builder trigger(AModuleDialog trigger) {
+            this.trigger = trigger;
+            return this;
+        }
+
+        /** @see UrlData#triggerOwn */
+        public Builder dontTriggerOwn() {
+            triggerOwn = false;
+            return this;
+        }
+
+        /** @see UrlData#disableUpdates */
+        public Builder disableUpdates() {
+            disableUpdates = true;
+            return this;
+        }
+
+        /**
+         * saves a key-value data, will be kept with automatic updates (but not with manual ones)
+         */
+        public Builder putData(String key, String value) {
+            entries.add(key);
+            entries.add(value);
+            return this;
+        }
+
+        public UrlData build() {
+            return new UrlData(url, trigger, triggerOwn, disableUpdates,
+                    entries.isEmpty() ? extraData : new ExtraData(extraData, entries.toArray(new String[0])));
+        }
+    }
 }
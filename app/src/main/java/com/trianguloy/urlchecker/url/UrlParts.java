@@ -0,0 +1,219 @@
+package com.trianguloy.urlchecker.url;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable parsed view of an url: [scheme:][//authority][path][?query][#fragment], with authority as [userInfo@]host[:port].
+ * Parts are kept as offsets of the url, substrings are only created when requested.
+ * Any string is accepted, missing parts are null.
+ * The query is the one the modules always used: after the first '?' and until the next '#', even if inside the fragment
+ * (hash-routed urls like 'https://example.com/#/page?a=b'), so in that case the fragment includes it.
+ * Get it from {@link UrlData#getParts()}, which parses each url only once.
+ */
+public class UrlParts {
+
+    public final String url;
+
+    /** position of the ':' after the scheme, -1 if none */
+    private final int schemeEnd;
+    /** authority [start, end), start -1 if none */
+    private final int authorityStart;
+    private final int authorityEnd;
+    /** host [start, end), start -1 if no authority */
+    private final int hostStart;
+    private final int hostEnd;
+    /** position of the ':' before the port, -1 if none */
+    private final int portSeparator;
+    /** path [authorityEnd or schemeEnd+1, pathEnd) */
+    private final int pathEnd;
+    /** position of the first '?', -1 if none */
+    private final int querySeparator;
+    /** position of the first '#' after the query, or the length */
+    private final int queryEnd;
+    /** position of the first '#', -1 if none */
+    private final int fragmentSeparator;
+
+    /** the query parameters, parsed when first needed */
+    private volatile List<Parameter> parameters;
+
+    public UrlParts(String url) {
+        this.url = url;
+        var length = url.length();
+
+        // fragment and query
+        fragmentSeparator = url.indexOf('#');
+        querySeparator = url.indexOf('?');
+        var hash = querySeparator == -1 ? -1 : url.indexOf('#', querySeparator + 1);
+        queryEnd = hash == -1 ? length : hash;
+        var end = fragmentSeparator == -1 ? length : fragmentSeparator;
+        pathEnd = querySeparator == -1 ? end : Math.min(querySeparator, end);
+
+        // scheme: letter *(letter / digit / '+' / '-' / '.') ':'
+        var scheme = -1;
+        if (pathEnd > 0 && isLetter(url.charAt(0))) {
+            for (int i = 1; i < pathEnd; i++) {
+                var c = url.charAt(i);
+                if (c == ':') {
+                    scheme = i;
+                    break;
+                }
+                if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') break;
+            }
+        }
+        schemeEnd = scheme;
+
+        // authority
+        var start = schemeEnd + 1;
+        if (url.startsWith("//", start)) {
+            authorityStart = start + 2;
+            var slash = url.indexOf('/', authorityStart);
+            authorityEnd = slash == -1 || slash > pathEnd ? pathEnd : slash;
+
+            // [userInfo@]host[:port]
+            var at = url.lastIndexOf('@', authorityEnd - 1);
+            hostStart = at >= authorityStart ? at + 1 : authorityStart;
+            var hostEnd = authorityEnd;
+            var colon = url.lastIndexOf(':', authorityEnd - 1);
+            var bracket = url.lastIndexOf(']', authorityEnd - 1);
+            if (colon >= hostStart && colon > bracket) hostEnd = colon;
+            this.hostEnd = hostEnd;
+            portSeparator = hostEnd == authorityEnd ? -1 : hostEnd;
+        } else {
+            authorityStart = authorityEnd = -1;
+            hostStart = this.hostEnd = -1;
+            portSeparator = -1;
+        }
+    }
+
+    /* ------------------- parts ------------------- */
+
+    /** 'https' */
+    public String getScheme() {
+        return schemeEnd == -1 ? null : url.substring(0, schemeEnd);
+    }
+
+    /** 'user@example.com:8080' */
+    public String getAuthority() {
+        return authorityStart == -1 ? null : url.substring(authorityStart, authorityEnd);
+    }
+
+    /** 'user' */
+    public String getUserInfo() {
+        return authorityStart == -1 || hostStart == authorityStart ? null : url.substring(authorityStart, hostStart - 1);
+    }
+
+    /** 'example.com' (as written, ipv6 addresses keep the brackets) */
+    public String getHost() {
+        return hostStart == -1 ? null : url.substring(hostStart, hostEnd);
+    }
+
+    /** '8080' */
+    public String getPort() {
+        return portSeparator == -1 ? null : url.substring(portSeparator + 1, authorityEnd);
+    }
+
+    /** '/path/file' (empty if none) */
+    public String getPath() {
+        return url.substring(getPathStart(), pathEnd);
+    }
+
+    /** 'a=b&c' (without the '?') */
+    public String getQuery() {
+        return querySeparator == -1 ? null : url.substring(querySeparator + 1, queryEnd);
+    }
+
+    /** 'section' (without the '#') */
+    public String getFragment() {
+        return fragmentSeparator == -1 ? null : url.substring(fragmentSeparator + 1);
+    }
+
+    /* ------------------- parameters ------------------- */
+
+    /** A query parameter: 'name=value' or just 'name' */
+    public class Parameter {
+        private final int start;
+        private final int end;
+        /** position of the '=', -1 if none */
+        private final int equals;
+
+        private Parameter(int start, int end, int equals) {
+            this.start = start;
+            this.end = end;
+            this.equals = equals;
+        }
+
+        /** The whole parameter, undecoded */
+        public String getRaw() {
+            return url.substring(start, end);
+        }
+
+        /** The name, undecoded */
+        public String getName() {
+            return url.substring(start, equals == -1 ? end : equals);
+        }
+
+        /** The value (everything after the first '='), undecoded. Null if there is no '=' */
+        public String getValue() {
+            return equals == -1 ? null : url.substring(equals + 1, end);
+        }
+
+        /** True if there is nothing between the separators ('a&&b') */
+        public boolean isEmpty() {
+            return start == end;
+        }
+    }
+
+    /** The query parameters, separated by '&' (including empty ones). Empty if there is no query */
+    public List<Parameter> getParameters() {
+        if (parameters == null) {
+            if (querySeparator == -1) {
+                parameters = Collections.emptyList();
+            } else {
+                var list = new ArrayList<Parameter>();
+                var start = querySeparator + 1;
+                while (true) {
+                    var end = url.indexOf('&', start);
+                    if (end == -1 || end > queryEnd) end = queryEnd;
+                    var equals = url.indexOf('=', start);
+                    list.add(new Parameter(start, end, equals != -1 && equals < end ? equals : -1));
+                    if (end == queryEnd) break;
+                    start = end + 1;
+                }
+                parameters = Collections.unmodifiableList(list);
+            }
+        }
+        return parameters;
+    }
+
+    /** The url without the query (and its '?') */
+    public String getUrlWithoutQuery() {
+        return querySeparator == -1 ? url : url.substring(0, querySeparator) + url.substring(queryEnd);
+    }
+
+    /** The url without the parameter [index] (and without the '?' if it was the only one) */
+    public String getUrlWithoutParameter(int index) {
+        var parameters = getParameters();
+        var sb = new StringBuilder(url.length());
+        sb.append(url, 0, querySeparator);
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i == index) continue;
+            // first after '?', the rest after '&'
+            sb.append(sb.length() == querySeparator ? '?' : '&');
+            sb.append(url, parameters.get(i).start, parameters.get(i).end);
+        }
+        sb.append(url, queryEnd, url.length());
+        return sb.toString();
+    }
+
+    /* ------------------- internal ------------------- */
+
+    private int getPathStart() {
+        return authorityStart != -1 ? authorityEnd : schemeEnd + 1;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
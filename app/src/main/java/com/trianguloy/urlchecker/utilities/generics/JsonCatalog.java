@@ -1,38 +1,135 @@
 package com.trianguloy.urlchecker.utilities.generics;
 
-import android.app.Activity;
 import android.content.Context;
 
 import com.trianguloy.urlchecker.R;
 import com.trianguloy.urlchecker.activities.JsonEditorInterface;
+import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 import com.trianguloy.urlchecker.utilities.wrappers.InternalFile;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 /**
  * Represents a generic catalog
  */
 public abstract class JsonCatalog implements JsonEditorInterface {
 
-    private final Activity cntx;
+    /* ------------------- cache ------------------- */
+
+    /**
+     * The parsed catalogs, shared between all instances, by file name.
+     * Discarded when the file changes.
+     */
+    private static final Map<String, Snapshot> CACHE = new HashMap<>();
+
+    /**
+     * A parsed catalog, with the regexes and representation compiled from it.
+     * Checking if the catalog changed requires reading the file attributes, so a snapshot should be resolved once (see {@link #getSnapshot()})
+     * and then used for all the regexes of an evaluation.
+     */
+    public static class Snapshot {
+        private final String version;
+        /** The catalog, shared: must not be modified */
+        public final JSONObject catalog;
+        private final Map<String, Pattern> patterns = new HashMap<>();
+        private Object compiled = null;
+
+        private Snapshot(String version, JSONObject catalog) {
+            this.version = version;
+            this.catalog = catalog;
+        }
+
+        /** Returns the compiled [regex], compiled only once per snapshot */
+        public Pattern getPattern(String regex) {
+            synchronized (patterns) {
+                var pattern = patterns.get(regex);
+                if (pattern == null) patterns.put(regex, pattern = Pattern.compile(regex));
+                return pattern;
+            }
+        }
+    }
+
+    /* ------------------- class ------------------- */
+
+    private final Context cntx;
+    private final String fileName;
     private final InternalFile custom;
     private final String editorDescription;
 
-    public JsonCatalog(Activity cntx, String fileName, int editorDescription) {
+    public JsonCatalog(Context cntx, String fileName, int editorDescription) {
         this(cntx, fileName, cntx.getString(editorDescription));
     }
 
-    public JsonCatalog(Activity cntx, String fileName, String editorDescription) {
+    public JsonCatalog(Context cntx, String fileName, String editorDescription) {
         this.cntx = cntx;
         this.editorDescription = editorDescription;
+        this.fileName = fileName;
         custom = new InternalFile(fileName, cntx);
     }
 
     /**
-     * Returns the current catalog
+     * Returns the current catalog.
+     * It is shared and cached until the catalog changes, so it must not be modified (use {@link #getEditableCatalog()} for that)
      */
     public JSONObject getCatalog() {
+        return getSnapshot().catalog;
+    }
+
+    /**
+     * Returns a copy of the current catalog, which can be modified and then saved
+     */
+    public JSONObject getEditableCatalog() {
+        return parseCatalog();
+    }
+
+    /**
+     * Returns the catalog converted by [compiler], cached until the catalog changes.
+     * There is only one compiled representation per catalog, so the same compiler must always be used.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T getCompiled(JavaUtils.Function<JSONObject, T> compiler) {
+        var entry = getSnapshot();
+        synchronized (entry) {
+            if (entry.compiled == null) entry.compiled = compiler.apply(entry.catalog);
+            return (T) entry.compiled;
+        }
+    }
+
+    /**
+     * Returns the current catalog and its compiled regexes, parsing it again if it changed
+     */
+    public Snapshot getSnapshot() {
+        // the file version (its attributes, zero if it doesn't exist) and the locale, the built-in catalog may depend on it
+        var version = custom.getVersion() + "/" + cntx.getResources().getConfiguration().locale;
+
+        synchronized (CACHE) {
+            var entry = CACHE.get(fileName);
+            if (entry == null || !entry.version.equals(version)) {
+                entry = new Snapshot(version, parseCatalog());
+                CACHE.put(fileName, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Discards the cached catalog
+     */
+    private void invalidate() {
+        synchronized (CACHE) {
+            CACHE.remove(fileName);
+        }
+    }
+
+    /**
+     * Reads and parses the current catalog
+     */
+    private JSONObject parseCatalog() {
         // get the updated file first
         try {
             String content = custom.get();
@@ -69,11 +166,14 @@ public abstract class JsonCatalog implements JsonEditorInterface {
         // same as builtin (maybe a reset?), delete custom
         if (content.toString().equals(getBuiltIn().toString())) {
             custom.delete();
+            invalidate();
             return true;
         }
 
         // store
-        return custom.set(content.toString());
+        var saved = custom.set(content.toString());
+        invalidate();
+        return saved;
     }
 
 
@@ -28,7 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -207,10 +207,10 @@ public interface AndroidUtils {
     }
 
     /**
-     * Returns all the unique links found on a given text
+     * Returns all the unique links found on a given text, in order
      */
     static Set<String> getLinksFromText(CharSequence text) {
-        var links = new HashSet<String>();
+        var links = new LinkedHashSet<String>();
         var matcher = Patterns.WEB_URL.matcher(text);
         while (matcher.find()) links.add(matcher.group());
         return links;
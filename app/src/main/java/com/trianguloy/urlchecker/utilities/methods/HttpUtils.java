@@ -1,66 +1,201 @@
 package com.trianguloy.urlchecker.utilities.methods;
 
+import android.util.Log;
+import android.util.Pair;
+
+import com.trianguloy.urlchecker.BuildConfig;
+
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 
-/** HttpUtils class contains the method related to url. */
+/**
+ * HttpUtils class contains the method related to url.
+ * All connections go through {@link #connect}, which applies the common configuration and limits.
+ */
 public class HttpUtils {
     public static final int CONNECT_TIMEOUT = 5000;
+    public static final int READ_TIMEOUT = 15000;
+
+    /** Max time waiting for a free connection */
+    public static final int WAIT_TIMEOUT = 10000;
+
+    /** Max number of simultaneous connections, from all the app (excluding downloads) */
+    private static final int MAX_CONNECTIONS = 4;
+    private static final Semaphore connections = new Semaphore(MAX_CONNECTIONS, true);
+
+    /** Max number of simultaneous downloads (catalogs), separated so that they don't block the other connections */
+    private static final int MAX_DOWNLOADS = 4;
+    private static final Semaphore downloads = new Semaphore(MAX_DOWNLOADS, true);
+
+    /** Receives an opened connection and returns something from it */
+    public interface Request<T> {
+        T perform(HttpURLConnection connection) throws IOException;
+    }
+
+    /** Same as {@link #connect(String, boolean, Request)}, not a download */
+    public static <T> T connect(String url, Request<T> request) throws IOException {
+        return connect(url, false, request);
+    }
+
+    /**
+     * Opens a connection to [url], configured with the common settings, and performs the [request] with it.
+     * Waits (up to {@link #WAIT_TIMEOUT}) if there are already too many connections, or too many downloads if [download].
+     * Afterwards the response stream is closed instead of disconnecting, so that the platform can reuse the connection (keep-alive).
+     * On debug builds the result is logged (without the url, which may contain secrets).
+     */
+    public static <T> T connect(String url, boolean download, Request<T> request) throws IOException {
+        var limit = download ? downloads : connections;
+        try {
+            if (!limit.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout while waiting for a connection");
+            }
+        } catch (InterruptedException e) {
+            // keep it interrupted, for the callers that check it
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+
+        var start = System.currentTimeMillis();
+        HttpURLConnection connection = null;
+        try {
+            var urlConnection = new URL(url).openConnection();
+            if (!(urlConnection instanceof HttpURLConnection)) throw new IOException("Not an http url: " + url);
+            connection = (HttpURLConnection) urlConnection;
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+
+            var result = request.perform(connection);
+            if (BuildConfig.DEBUG) log(connection, String.valueOf(connection.getResponseCode()), start);
+            release(connection);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            if (BuildConfig.DEBUG) log(connection, e.getClass().getSimpleName(), start);
+            if (connection != null) connection.disconnect();
+            throw e;
+        } finally {
+            limit.release();
+        }
+    }
 
     /** GETs an URL and returns the content as a string. */
     public static String readFromUrl(String url) throws IOException {
-        var connection = new URL(url).openConnection();
-        connection.setConnectTimeout(CONNECT_TIMEOUT);
-        return StreamUtils.inputStream2String(connection.getInputStream());
+        return connect(url, connection -> StreamUtils.inputStream2String(connection.getInputStream()));
     }
 
     /** GETs an URL and streams its lines. */
     public static void streamFromUrl(String url, JavaUtils.Consumer<String> consumer) throws IOException {
-        var connection = new URL(url).openConnection();
-        connection.setConnectTimeout(CONNECT_TIMEOUT);
-        StreamUtils.consumeLines(connection.getInputStream(), consumer);
+        connect(url, connection -> {
+            StreamUtils.consumeLines(connection.getInputStream(), consumer);
+            return null;
+        });
     }
 
-    /** POSTs something (a body) to an URL and returns its content as a string. */
-    public static String performPOST(String url, String body) throws IOException {
-        // Send POST data request
-        var conn = (HttpsURLConnection) new URL(url).openConnection();
-        conn.setDoOutput(true);
-        conn.setConnectTimeout(CONNECT_TIMEOUT);
-        try (var wr = new OutputStreamWriter(conn.getOutputStream())) {
-            wr.write(body);
-            wr.flush();
-        }
-        // Get the server response
-        return StreamUtils.inputStream2String(
-                conn.getResponseCode() >= 200 && conn.getResponseCode() < 300
-                        ? conn.getInputStream()
-                        : conn.getErrorStream()
-        );
+    /** Reads the content of a response */
+    public interface Reader {
+        void read(InputStream stream) throws IOException;
+    }
+
+    /**
+     * GETs an URL and reads its content with [reader], unless it wasn't modified since a previous call that returned [validators] (etag, last modified. Can be null).
+     * Returns the new validators, or null if not modified.
+     * Errors while reading are thrown, so that a partial content is not considered valid.
+     * This is a download, limited separately from the other connections.
+     */
+    public static Pair<String, String> readFromUrlIfModified(String url, Pair<String, String> validators, Reader reader) throws IOException {
+        return connect(url, true, connection -> {
+            if (validators != null) {
+                if (validators.first != null) connection.setRequestProperty("If-None-Match", validators.first);
+                if (validators.second != null) connection.setRequestProperty("If-Modified-Since", validators.second);
+            }
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return null;
+            }
+
+            try (var stream = connection.getInputStream()) {
+                reader.read(stream);
+            }
+            return Pair.create(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        });
     }
 
     /**
-     * Same as performPOST, but for a different module.
-     * TODO: use a unique method for all connections (merge with the virusTotal v3 branch issue)
+     * GETs an URL and streams its lines, unless it wasn't modified since a previous call that returned [validators] (etag, last modified. Can be null).
+     * Returns the new validators, or null if not modified.
+     * Unlike {@link #streamFromUrl}, errors while reading are thrown, so that a partial content is not considered valid.
      */
+    public static Pair<String, String> streamFromUrlIfModified(String url, Pair<String, String> validators, JavaUtils.Consumer<String> consumer) throws IOException {
+        return readFromUrlIfModified(url, validators, stream -> {
+            var reader = new BufferedReader(new InputStreamReader(stream, StreamUtils.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // stopped, a socket read doesn't check it
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while reading " + url);
+                consumer.accept(line);
+            }
+        });
+    }
+
+    /** POSTs something (a body) to an URL and returns its content as a string. */
+    public static String performPOST(String url, String body) throws IOException {
+        return connect(url, connection -> {
+            // Send POST data request
+            connection.setDoOutput(true);
+            try (var wr = new OutputStreamWriter(connection.getOutputStream())) {
+                wr.write(body);
+                wr.flush();
+            }
+            // Get the server response
+            return StreamUtils.inputStream2String(
+                    connection.getResponseCode() >= 200 && connection.getResponseCode() < 300
+                            ? connection.getInputStream()
+                            : connection.getErrorStream()
+            );
+        });
+    }
+
+    /** POSTs a json body to an URL and returns the response code. */
     public static int performPOSTJSON(String url, String body) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = body.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        }
+        return connect(url, connection -> {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
 
-        return conn.getResponseCode();
+            try (OutputStream os = connection.getOutputStream()) {
+                byte[] input = body.getBytes(StandardCharsets.UTF_8);
+                os.write(input, 0, input.length);
+            }
+
+            return connection.getResponseCode();
+        });
+    }
+
+    /** Logs the method and host of [connection] (if any), its [result] and the time since [start] */
+    private static void log(HttpURLConnection connection, String result, long start) {
+        var request = connection == null ? "?" : connection.getRequestMethod() + " " + connection.getURL().getHost();
+        Log.d("HTTP", request + " -> " + result + " (" + (System.currentTimeMillis() - start) + "ms)");
+    }
+
+    /** Closes the response of a finished [connection], so it can be reused */
+    private static void release(HttpURLConnection connection) {
+        try {
+            InputStream stream = connection.getResponseCode() >= 400
+                    ? connection.getErrorStream()
+                    : connection.getInputStream();
+            if (stream != null) stream.close();
+        } catch (IOException e) {
+            // can't be reused
+            connection.disconnect();
+        }
     }
 }
@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -37,6 +38,34 @@ public interface StreamUtils {
         }
     }
 
+    /** Reads an input stream, transfers its content to a file and returns its SHA-256 hash, in a single pass. The stream is NOT closed. */
+    static String inputStream2FileSha256(InputStream in, File file) throws IOException {
+        var digest = newSha256();
+        inputStream2File(new DigestInputStream(in, digest), file);
+        return toHex(digest.digest());
+    }
+
+    /** Reads an input stream and returns the SHA-256 hash of its content. The stream is NOT closed. */
+    static String inputStream2Sha256(InputStream in) throws IOException {
+        var digest = newSha256();
+        var buffer = new byte[10240];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /** Returns a new SHA-256 digest */
+    static MessageDigest newSha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // this should never happen, all Androids must support sha-256
+            throw new IOException(e);
+        }
+    }
+
     /** Reads an input stream and transfers its content to an output stream. The streams are NOT closed. */
     static void inputStream2OutputStream(InputStream in, OutputStream out) throws IOException {
         var buffer = new byte[10240];
@@ -66,10 +95,7 @@ public interface StreamUtils {
                     .digest(string.getBytes(UTF_8));
 
             // convert to string
-            // adapted from https://stackoverflow.com/questions/7166129/how-can-i-calculate-the-sha-256-hash-of-a-string-in-android/7166240#7166240
-            StringBuilder hex = new StringBuilder(digest.length * 2);
-            for (byte b : digest) hex.append(String.format("%02x", b & 0xFF));
-            return hex.toString();
+            return toHex(digest);
 
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
@@ -78,4 +104,12 @@ public interface StreamUtils {
         }
     }
 
+    /** Returns the lowercase hexadecimal representation of some bytes. */
+    static String toHex(byte[] bytes) {
+        // adapted from https://stackoverflow.com/questions/7166129/how-can-i-calculate-the-sha-256-hash-of-a-string-in-android/7166240#7166240
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(String.format("%02x", b & 0xFF));
+        return hex.toString();
+    }
+
 }
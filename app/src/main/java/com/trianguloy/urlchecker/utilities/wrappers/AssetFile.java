@@ -5,6 +5,7 @@ import android.content.Context;
 import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Represents a file from assets (read-only)
@@ -30,4 +31,22 @@ public class AssetFile {
         }
     }
 
+    /**
+     * Opens the content, throws if the file can't be read
+     */
+    public InputStream open() throws IOException {
+        return cntx.getAssets().open(fileName);
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content, null if can't be read
+     */
+    public String sha256() {
+        try (var in = open()) {
+            return StreamUtils.inputStream2Sha256(in);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
 }
@@ -5,13 +5,21 @@ import android.content.Context;
 import com.trianguloy.urlchecker.utilities.methods.JavaUtils;
 import com.trianguloy.urlchecker.utilities.methods.StreamUtils;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Represents an internal file, can be modified
  */
 public class InternalFile {
+
+    /** Number of modifications done through this class, by file name (see {@link #getVersion()}) */
+    private static final Map<String, Integer> MODIFICATIONS = new HashMap<>();
+
     private final String fileName;
     private final Context cntx;
 
@@ -31,6 +39,24 @@ public class InternalFile {
         }
     }
 
+    /**
+     * Opens the content, throws if the file doesn't exist or can't be read
+     */
+    public InputStream open() throws IOException {
+        return cntx.openFileInput(fileName);
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content, null if the file doesn't exists or can't be read
+     */
+    public String sha256() {
+        try (var in = open()) {
+            return StreamUtils.inputStream2Sha256(in);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
     /**
      * Streams the lines
      */
@@ -61,14 +87,62 @@ public class InternalFile {
         } catch (IOException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            markModified();
         }
     }
 
+    /**
+     * Replaces the content with [file], which is moved (not copied) in a single step: the previous content is kept if it fails.
+     * [file] must be an internal file too
+     */
+    public boolean replaceWith(File file) {
+        try {
+            return file.renameTo(cntx.getFileStreamPath(fileName));
+        } finally {
+            markModified();
+        }
+    }
+
+    /**
+     * Returns true if the file exists
+     */
+    public boolean exists() {
+        return cntx.getFileStreamPath(fileName).exists();
+    }
+
+    /**
+     * Returns the last modification time, 0 if the file doesn't exist
+     */
+    public long lastModified() {
+        return cntx.getFileStreamPath(fileName).lastModified();
+    }
+
     /**
      * Deletes the file
      */
     public void delete() {
         cntx.deleteFile(fileName);
+        markModified();
+    }
+
+    /**
+     * Returns a value that changes whenever the file is modified: through this class, or externally (detected by its modification time or size)
+     */
+    public String getVersion() {
+        var file = cntx.getFileStreamPath(fileName);
+        int modifications;
+        synchronized (MODIFICATIONS) {
+            modifications = JavaUtils.valueOrDefault(MODIFICATIONS.get(fileName), 0);
+        }
+        return file.lastModified() + "/" + file.length() + "/" + modifications;
+    }
+
+    /** Registers a modification of the file */
+    private void markModified() {
+        synchronized (MODIFICATIONS) {
+            MODIFICATIONS.put(fileName, JavaUtils.valueOrDefault(MODIFICATIONS.get(fileName), 0) + 1);
+        }
     }
 
 }
@@ -0,0 +1,110 @@
+package com.trianguloy.urlchecker.modules.companions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that {@link ClearUrlRules.Provider#removeParameters} gives the same result as applying each '([?&#])rule=[^&#]*' regex in order,
+ * followed by the removal of empty elements (the original implementation).
+ */
+public class ClearUrlRulesTest {
+
+    private static final List<String> RULES = Arrays.asList("utm_source", "fbclid", "(?:%3F)?utm(?:_[a-z_]*)?", "[a-z]*ref[a-z]*", "jb[a-z]*?", "__mk_[a-z]{1,3}_[a-z]{1,3}");
+    private static final List<String> REFERRALS = Arrays.asList("tag", "ascsubtag");
+    private static final List<String> SEPARATOR_RULES = Arrays.asList("[^a-z%0-9]adId", "otracker.?", "gclid");
+
+    private static final List<String> PIECES = Arrays.asList(
+            "?", "&", "#", "=", "=", "1", "x?y", "%3F",
+            "utm_source", "UTM_Medium", "fbclid", "ref", "myref", "jbx", "__mk_de_DE", "tag", "ascsubtag",
+            "adId", "otracker", "otracker1", "gclid", "keep", "a"
+    );
+
+    @Test
+    public void namesOnly() {
+        assertTrue(ClearUrlRules.matchesNamesOnly("(?:%3F)?utm(?:_[a-z_]*)?"));
+        assertTrue(ClearUrlRules.matchesNamesOnly("hc_[a-z_%\\[\\]0-9]*"));
+        assertTrue(ClearUrlRules.matchesNamesOnly("\\$3p"));
+        assertFalse(ClearUrlRules.matchesNamesOnly("[^a-z%0-9]adId"));
+        assertFalse(ClearUrlRules.matchesNamesOnly("otracker.?"));
+        assertFalse(ClearUrlRules.matchesNamesOnly("[!-/]x"));
+        assertFalse(ClearUrlRules.matchesNamesOnly("a|b"));
+        assertFalse(ClearUrlRules.matchesNamesOnly("(?=a)a"));
+    }
+
+    @Test
+    public void separatorRule() {
+        var provider = provider(SEPARATOR_RULES, Collections.emptyList());
+        assertEquals("https://example.com/?x=1", provider.removeParameters("https://example.com/?x=1&&adId=2", false, false, (referral, rule) -> {
+        }));
+    }
+
+    @Test
+    public void randomized() {
+        var random = new Random(0);
+        checkRandomized(RULES, REFERRALS, random);
+        checkRandomized(SEPARATOR_RULES, REFERRALS, random);
+        checkRandomized(RULES, SEPARATOR_RULES, random);
+    }
+
+    /* ------------------- utils ------------------- */
+
+    /** Compares the provider with the original implementation for random urls */
+    private static void checkRandomized(List<String> rules, List<String> referrals, Random random) {
+        var provider = provider(rules, referrals);
+        for (int i = 0; i < 20000; i++) {
+            var url = randomUrl(random);
+            var withReferrals = random.nextBoolean();
+            var cleanup = random.nextBoolean();
+            assertEquals(url,
+                    reference(url, rules, withReferrals ? referrals : Collections.emptyList(), cleanup),
+                    provider.removeParameters(url, withReferrals, cleanup, (referral, rule) -> {
+                    })
+            );
+        }
+    }
+
+    private static ClearUrlRules.Provider provider(List<String> rules, List<String> referrals) {
+        return new ClearUrlRules.Provider(new ClearUrlRules.Source("test", ".*", false, false, false,
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), rules, referrals));
+    }
+
+    private static String randomUrl(Random random) {
+        var url = new StringBuilder("https://example.com/path");
+        var length = random.nextInt(12);
+        for (int i = 0; i < length; i++) url.append(PIECES.get(random.nextInt(PIECES.size())));
+        return url.toString();
+    }
+
+    /** The original implementation */
+    private static String reference(String url, List<String> rules, List<String> referrals, boolean cleanup) {
+        var cleared = url;
+        for (var list : Arrays.asList(rules, referrals)) {
+            for (var rule : list) {
+                var matcher = Pattern.compile("([?&#])" + rule + "=[^&#]*", Pattern.CASE_INSENSITIVE).matcher(cleared);
+                while (matcher.find()) {
+                    cleared = matcher.replaceFirst("$1");
+                    matcher.reset(cleared);
+                }
+            }
+        }
+        if (!cleanup && cleared.equals(url)) return url;
+        return cleared
+                .replaceAll("\\?&+", "?")
+                .replaceAll("\\?#", "#")
+                .replaceAll("\\?$", "")
+                .replaceAll("&&+", "&")
+                .replaceAll("&#", "#")
+                .replaceAll("&$", "")
+                .replaceAll("#&+", "#")
+                .replaceAll("#$", "");
+    }
+}